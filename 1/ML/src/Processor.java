@@ -35,6 +35,10 @@ import weka.core.Instances;
 import java.io.*;
 import java.security.SecureRandom;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -43,6 +47,11 @@ public class Processor {
     private static final double ZERO_THRESHOLD = 1.0E-32;
     private static final StandardDeviation STANDARD_DEVIATION = new StandardDeviation();
     private static final Function MEAN = new Mean();
+    private static final RandomStreams RANDOM_STREAMS = RandomStreams.fromSystemProperties();
+    private static final ExecutorService THREAD_POOL =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    // slow classifiers of an iteration overlap with the next ones, but replicates of only so many are kept at once
+    private static final int ITERATIONS_IN_FLIGHT = Runtime.getRuntime().availableProcessors();
 
     private static final Collection<Classifier> CLASSIFIERS = Arrays.asList(
             new LibSVM(),
@@ -118,11 +127,13 @@ public class Processor {
                 e.printStackTrace();
             }
         }
+
+        THREAD_POOL.shutdown();
     }
 
     private static void processFile(final String fileName, final CSVPrinter out) {
         final Instances data = readData(fileName);
-        final BootstrapResults results = bootstrapAnalyzing(data);
+        final BootstrapResults results = bootstrapAnalyzing(data, FilenameUtils.getName(fileName));
         printBootstrapResults(results, out);
     }
 
@@ -178,13 +189,13 @@ public class Processor {
     }
 
     @SuppressWarnings("OverlyLongMethod")
-    private static BootstrapResults bootstrapAnalyzing(final Instances data) {
+    private static BootstrapResults bootstrapAnalyzing(final Instances data, final String dataset) {
         final int hash = data.hashCode();
 
         final Map<Classifier, double[]> microFMeasures = new LinkedHashMap<>(CLASSIFIERS.size(), 1);
         final Map<Classifier, double[]> macroFMeasures = new LinkedHashMap<>(CLASSIFIERS.size(), 1);
         final Map<Classifier, double[]> pctCorrect = new LinkedHashMap<>(CLASSIFIERS.size(), 1);
-        final Map<Classifier, List<List<Double>>> ncgRaw = new LinkedHashMap<>(CLASSIFIERS.size(), 1);
+        final Map<Classifier, double[][]> ncgRaw = new LinkedHashMap<>(CLASSIFIERS.size(), 1);
         final Map<Classifier, List<Triple<Double, Double, Double>>> ncg = new LinkedHashMap<>(CLASSIFIERS.size(), 1);
 
         CLASSIFIERS.stream().forEach(classifier -> {
@@ -192,24 +203,33 @@ public class Processor {
             macroFMeasures.put(classifier, new double[BOOTSTRAP_COUNT]);
             pctCorrect.put(classifier, new double[BOOTSTRAP_COUNT]);
             pctCorrect.put(classifier, new double[BOOTSTRAP_COUNT]);
-            ncgRaw.put(classifier, new ArrayList<>(BOOTSTRAP_COUNT));
+            ncgRaw.put(classifier, new double[BOOTSTRAP_COUNT][]);
             ncg.put(classifier, new ArrayList<>(BOOTSTRAP_COUNT));
         });
 
+        // every classifier of every iteration is a task of its own, results go to slots of their iteration; an
+        // iteration is submitted when the one ITERATIONS_IN_FLIGHT before it is complete
+        final Queue<List<Future<?>>> iterations = new ArrayDeque<>(ITERATIONS_IN_FLIGHT);
         int current = 1;
-        final int total = BOOTSTRAP_COUNT;
         for (int bootstrapIteration = 0; bootstrapIteration < BOOTSTRAP_COUNT; bootstrapIteration++) {
-            //noinspection MagicCharacter,SingleCharacterStringConcatenation,CharUsedInArithmeticContext
-            System.err.println("[" + hash + "]" + " [INFO] " + "bootstrap iteration " + current++ + " of " + total);
-            final Pair<Instances, Instances> bootsrapped = bootstrapInstances(data);
+            if (iterations.size() == ITERATIONS_IN_FLIGHT) {
+                awaitIteration(iterations.remove(), hash, current++);
+            }
+
+            final Pair<Instances, Instances> bootsrapped = bootstrapInstances(data,
+                    RANDOM_STREAMS.replicate(dataset, bootstrapIteration));
             final Instances testInstances = bootsrapped.getLeft();
             final Instances trainInstances = bootsrapped.getRight();
-            processBootstrapClassifiers(microFMeasures, macroFMeasures, pctCorrect,
-                    ncgRaw, bootstrapIteration, testInstances, trainInstances);
+            iterations.add(processBootstrapClassifiers(microFMeasures, macroFMeasures, pctCorrect,
+                    ncgRaw, bootstrapIteration, testInstances, trainInstances));
+        }
+
+        while (!iterations.isEmpty()) {
+            awaitIteration(iterations.remove(), hash, current++);
         }
 
         CLASSIFIERS.stream().forEach(classifier -> {
-            final List<List<Double>> curNcgRaw = ncgRaw.get(classifier);
+            final double[][] curNcgRaw = ncgRaw.get(classifier);
             final List<Triple<Double, Double, Double>> curNcg = ncg.get(classifier);
 
             final Percentile quantifier = new PercentileExcel();
@@ -219,7 +239,7 @@ public class Processor {
                 List<Double> values = new ArrayList<>(BOOTSTRAP_COUNT);
 
                 for (int i = 0; i < BOOTSTRAP_COUNT; i++) {
-                    values.add(curNcgRaw.get(i).get(k));
+                    values.add(curNcgRaw[i][k]);
                 }
 
                 ncgTranspon.add(values);
@@ -239,21 +259,39 @@ public class Processor {
         return new BootstrapResults(microFMeasures, macroFMeasures, pctCorrect, ncg);
     }
 
+    // progress is reported in order of iterations, whatever order tasks complete in
+    private static void awaitIteration(final Iterable<Future<?>> iteration, final int hash, final int current) {
+        for (Future<?> task : iteration) {
+            try {
+                task.get();
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+
+        //noinspection MagicCharacter,SingleCharacterStringConcatenation,CharUsedInArithmeticContext
+        System.err.println("[" + hash + "]" + " [INFO] " + "bootstrap iteration " + current + " of " + BOOTSTRAP_COUNT);
+    }
+
     @SuppressWarnings("MagicNumber")
-    private static void processBootstrapClassifiers(
+    private static List<Future<?>> processBootstrapClassifiers(
             final Map<Classifier, double[]> microFMeasures,
             final Map<Classifier, double[]> macroFMeasures,
             final Map<Classifier, double[]> pctCorrect,
-            final Map<Classifier, List<List<Double>>> ncgRaw,
+            final Map<Classifier, double[][]> ncgRaw,
             final int bootstrapIteration,
             final Instances testInstances,
             final Instances trainInstances) {
-        CLASSIFIERS.stream().forEach(classifier -> {
+        // classifiers of the iteration are evaluated concurrently, each task on its own copies of classifier and
+        // training data, as a classifier may change the data it is built on; test data is only read
+        return CLASSIFIERS.stream().map(classifier -> THREAD_POOL.submit(() -> {
             try {
-                final Evaluation evaluation = new Evaluation(trainInstances);
+                final Classifier copy = Classifier.makeCopy(classifier);
+                final Instances train = new Instances(trainInstances);
+                final Evaluation evaluation = new Evaluation(train);
 
-                classifier.buildClassifier(trainInstances);
-                evaluation.evaluateModel(classifier, testInstances);
+                copy.buildClassifier(train);
+                evaluation.evaluateModel(copy, testInstances);
 
                 final List<Double> predictedUtility = new ArrayList<>(evaluation.predictions().size());
                 final List<Double> originalUtility = new ArrayList<>(evaluation.predictions().size());
@@ -264,7 +302,7 @@ public class Processor {
                 }
 
                 final List<Double> ncg = getNCG(predictedUtility, originalUtility);
-                ncgRaw.get(classifier).add(ncg);
+                ncgRaw.get(classifier)[bootstrapIteration] = ncg.stream().mapToDouble(v -> v).toArray();
 
                 final double[][] confusionMatrix = evaluation.confusionMatrix();
                 final List<Rational> precisions = precisions(confusionMatrix);
@@ -284,7 +322,7 @@ public class Processor {
             } catch (Exception e) {
                 e.printStackTrace();
             }
-        });
+        })).collect(Collectors.toList());
     }
 
     private static List<Double> getNCG(final List<Double> predictedUtility, final List<Double> originalUtility) {
@@ -344,8 +382,8 @@ public class Processor {
     }
 
     @SuppressWarnings("NumericCastThatLosesPrecision")
-    private static Pair<Instances, Instances> bootstrapInstances(final Instances data) {
-        return Pair.of(data, data.resample(new SecureRandom()));
+    private static Pair<Instances, Instances> bootstrapInstances(final Instances data, final Random random) {
+        return Pair.of(data, data.resample(random));
     }
 
     private static double fMeasure(final double precision, final double recall) {
@@ -436,6 +474,36 @@ public class Processor {
         }
     }
 
+    // Generators of bootstrap replicates derived from one master seed, keyed by data set and replicate so that they
+    // don't depend on thread or order. Classifiers of an iteration share its replicate. Weka draws from
+    // java.util.Random, so every replicate gets one seeded from the seed tree.
+    private static final class RandomStreams {
+        private static final String SEED_PROPERTY = "seed";
+
+        private final long masterSeed;
+
+        private RandomStreams(final long masterSeed) {
+            this.masterSeed = masterSeed;
+        }
+
+        private static RandomStreams fromSystemProperties() {
+            final String property = System.getProperty(SEED_PROPERTY);
+            final long seed = property == null ? new SecureRandom().nextLong() : Long.parseLong(property);
+            System.err.println("[INFO] master seed " + seed + ", pass -D" + SEED_PROPERTY + '=' + seed
+                    + " to reproduce the run");
+            return new RandomStreams(seed);
+        }
+
+        private Random replicate(final String dataset, final int replicate) {
+            //noinspection UnsecureRandomNumberGeneration
+            return new Random(child(child(masterSeed, dataset.hashCode()), replicate));
+        }
+
+        private static long child(final long seed, final long key) {
+            return new SplittableRandom(seed ^ key).nextLong();
+        }
+    }
+
     private static class BootstrapResults {
         private final Map<Classifier, double[]> microFMeasures;
         private final Map<Classifier, double[]> macroFMeasures;
@@ -1,7 +1,6 @@
 package org.trofiv;
 
 import weka.classifiers.Classifier;
-import weka.classifiers.Evaluation;
 import weka.classifiers.IteratedSingleClassifierEnhancer;
 import weka.classifiers.rules.ZeroR;
 import weka.core.Capabilities;
@@ -13,6 +12,7 @@ import weka.core.WeightedInstancesHandler;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.IntStream;
 
 @SuppressWarnings({"CloneableClassWithoutClone", "WeakerAccess"})
 public class BoostingAdditiveRegressionClassifier extends IteratedSingleClassifierEnhancer
@@ -21,6 +21,10 @@ public class BoostingAdditiveRegressionClassifier extends IteratedSingleClassifi
      * Shrinkage (Learning rate). Default = no shrinkage.
      */
     protected static final double M_SHRINKAGE = 1.0;
+    /**
+     * Number of instances predicted together, tree by tree.
+     */
+    protected static final int BLOCK_SIZE = 256;
     /**
      * The number of successfully generated base classifiers.
      */
@@ -33,18 +37,44 @@ public class BoostingAdditiveRegressionClassifier extends IteratedSingleClassifi
      * whether we have suitable data or nor (if not, ZeroR model is used)
      */
     protected boolean m_SuitableData = true;
+    /**
+     * Performed base classifiers laid out for prediction, <tt>null</tt> if they aren't all regression trees
+     */
+    protected FlatEnsemble m_Flat;
     /**
      * Test data instances
      */
     private Instances m_TestData;
+    /**
+     * Predictions for test data instances
+     */
+    private double[] m_Predictions;
+    /**
+     * Creates base classifiers as boosting proceeds
+     */
+    private final ClassifierFactory m_Factory;
 
     /**
-     * Constructor which takes base classifier as argument.
+     * Constructor which takes base classifier as argument. Base classifiers are serialized copies of it, made only
+     * for iterations actually performed.
      *
      * @param classifier the base classifier to use
      */
     public BoostingAdditiveRegressionClassifier(final Classifier classifier) {
         m_Classifier = classifier;
+        m_Factory = () -> Classifier.makeCopy(classifier);
+    }
+
+    /**
+     * Constructor which takes base classifier and factory of its equivalents as arguments, factory is called once per
+     * performed iteration.
+     *
+     * @param classifier the base classifier to use, template for options and capabilities
+     * @param factory    the base classifier factory to use
+     */
+    public BoostingAdditiveRegressionClassifier(final Classifier classifier, final ClassifierFactory factory) {
+        m_Classifier = classifier;
+        m_Factory = factory;
     }
 
     /**
@@ -74,21 +104,18 @@ public class BoostingAdditiveRegressionClassifier extends IteratedSingleClassifi
     @Override
     @SuppressWarnings("ProhibitedExceptionDeclared")
     public void buildClassifier(final Instances data) throws Exception {
-        super.buildClassifier(data);
+        // base classifiers are created lazily, see below
+        m_Classifiers = new Classifier[m_NumIterations];
 
         // can classifier handle the data?
         getCapabilities().testWithFail(data);
 
-        // remove instances with missing class
-        Instances newData = new Instances(data);
-        newData.deleteWithMissingClass();
-
-        // Add the model for the mean first
+        // Add the model for the mean first, it skips instances with missing class
         m_zeroR = new ZeroR();
-        m_zeroR.buildClassifier(newData);
+        m_zeroR.buildClassifier(data);
 
         // only class? -> use only ZeroR model
-        if (newData.numAttributes() == 1) {
+        if (data.numAttributes() == 1) {
             System.err.println("Cannot build model (only class attribute present in data!), "
                     + "using ZeroR model instead!");
             m_SuitableData = false;
@@ -96,34 +123,60 @@ public class BoostingAdditiveRegressionClassifier extends IteratedSingleClassifi
         }
 
         m_SuitableData = true;
+        //noinspection AssignmentToNull
+        m_Flat = null;
 
-        newData = residualReplace(newData, m_zeroR, false);
+        // residuals are kept apart from the data, which is never copied; missing class stays missing
+        final double[] residuals = new double[data.numInstances()];
         double sum = 0;
 
-        for (int i = 0; i < newData.numInstances(); i++) {
-            sum += newData.instance(i).weight() *
-                    newData.instance(i).classValue() * newData.instance(i).classValue();
+        for (int i = 0; i < data.numInstances(); i++) {
+            final Instance inst = data.instance(i);
+            if (inst.classIsMissing()) {
+                residuals[i] = Instance.missingValue();
+            } else {
+                residuals[i] = inst.classValue() - m_zeroR.classifyInstance(inst);
+                sum += inst.weight() * residuals[i] * residuals[i];
+            }
         }
 
         m_NumIterationsPerformed = 0;
         double temp_sum;
 
+        // attribute values don't change between rounds, regression trees sort them once
+        PresortedInstances presorted = null;
+
         do {
             temp_sum = sum;
 
             // Build the classifier
-            m_Classifiers[m_NumIterationsPerformed].buildClassifier(newData);
+            final Classifier classifier = m_Factory.newClassifier();
+            m_Classifiers[m_NumIterationsPerformed] = classifier;
+            final double[] predictions;
+
+            if (classifier instanceof RegressionTree) {
+                if (presorted == null) {
+                    presorted = ((RegressionTree) classifier).presort(data, residuals);
+                }
+                predictions = ((RegressionTree) classifier).buildWithPredictions(presorted, residuals);
+            } else {
+                predictions = fit(classifier, data, residuals);
+            }
 
-            newData = residualReplace(newData, m_Classifiers[m_NumIterationsPerformed], true);
+            // update residuals and their sum of squares in one pass
             sum = 0;
 
-            for (int i = 0; i < newData.numInstances(); i++) {
-                sum += newData.instance(i).weight() *
-                        newData.instance(i).classValue() * newData.instance(i).classValue();
+            for (int i = 0; i < data.numInstances(); i++) {
+                if (!Instance.isMissingValue(residuals[i])) {
+                    residuals[i] -= predictions[i] * M_SHRINKAGE;
+                    sum += data.instance(i).weight() * residuals[i] * residuals[i];
+                }
             }
 
             m_NumIterationsPerformed++;
         } while (temp_sum - sum > weka.core.Utils.SMALL && m_NumIterationsPerformed < m_Classifiers.length);
+
+        m_Flat = FlatEnsemble.of(m_Classifiers, m_NumIterationsPerformed, M_SHRINKAGE);
     }
 
     /**
@@ -142,6 +195,10 @@ public class BoostingAdditiveRegressionClassifier extends IteratedSingleClassifi
             return prediction;
         }
 
+        if (m_Flat != null) {
+            return m_Flat.predict(prediction, inst.toDoubleArray());
+        }
+
         for (int i = 0; i < m_NumIterationsPerformed; i++) {
             double toAdd = m_Classifiers[i].classifyInstance(inst);
             toAdd *= M_SHRINKAGE;
@@ -152,41 +209,76 @@ public class BoostingAdditiveRegressionClassifier extends IteratedSingleClassifi
     }
 
     /**
-     * Replace the class values of the instances from the current iteration
-     * with residuals after predicting with the supplied classifier.
+     * Predicts instances in blocks, every block goes through the trees one by one. Blocks are independent and are
+     * predicted in parallel.
      *
-     * @param data         the instances to predict
-     * @param c            the classifier to use
-     * @param useShrinkage whether shrinkage is to be applied to the model's output
-     * @return a new set of instances with class values replaced by residuals
+     * @param data the instances to predict
+     * @return prediction for every instance
+     * @throws Exception if an error occurs
+     */
+    @Override
+    @SuppressWarnings("ProhibitedExceptionDeclared")
+    public double[] predictAll(final Instances data) throws Exception {
+        final double[] predictions = new double[data.numInstances()];
+
+        if (!m_SuitableData || m_Flat == null) {
+            for (int i = 0; i < data.numInstances(); i++) {
+                predictions[i] = classifyInstance(data.instance(i));
+            }
+            return predictions;
+        }
+
+        final double[][] instances = new double[data.numInstances()][];
+        for (int i = 0; i < data.numInstances(); i++) {
+            predictions[i] = m_zeroR.classifyInstance(data.instance(i));
+            instances[i] = data.instance(i).toDoubleArray();
+        }
+
+        final FlatEnsemble flat = m_Flat;
+        final int numBlocks = (data.numInstances() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        IntStream.range(0, numBlocks).parallel().forEach(block -> flat.predict(predictions, instances,
+                block * BLOCK_SIZE, Math.min((block + 1) * BLOCK_SIZE, instances.length)));
+
+        return predictions;
+    }
+
+    /**
+     * Trains the classifier on a copy of the data with residuals as class values and predicts them.
+     *
+     * @param c         the classifier to train
+     * @param data      the training data
+     * @param residuals the residuals to fit
+     * @return prediction for every instance of the data
      * @throws Exception if something goes wrong
      */
     @SuppressWarnings("ProhibitedExceptionDeclared")
-    private static Instances residualReplace(
-            final Instances data,
+    private static double[] fit(
             final Classifier c,
-            final boolean useShrinkage) throws Exception {
+            final Instances data,
+            final double[] residuals) throws Exception {
         final Instances newInst = new Instances(data);
+        for (int i = 0; i < newInst.numInstances(); i++) {
+            newInst.instance(i).setClassValue(residuals[i]);
+        }
+
+        c.buildClassifier(newInst);
 
+        final double[] predictions = new double[newInst.numInstances()];
         for (int i = 0; i < newInst.numInstances(); i++) {
-            double pred = c.classifyInstance(newInst.instance(i));
-            if (useShrinkage) {
-                pred *= M_SHRINKAGE;
+            if (!newInst.instance(i).classIsMissing()) {
+                predictions[i] = c.classifyInstance(newInst.instance(i));
             }
-            final double residual = newInst.instance(i).classValue() - pred;
-            newInst.instance(i).setClassValue(residual);
         }
 
-        return newInst;
+        return predictions;
     }
 
     @Override
     @SuppressWarnings("ProhibitedExceptionDeclared")
     public void evaluate(final Instances train, final Instances test) throws Exception {
-        final Evaluation evaluation = new Evaluation(train);
         this.buildClassifier(train);
-        evaluation.evaluateModel(this, test);
-        m_TestData = new Instances(test);
+        m_TestData = test;
+        m_Predictions = predictAll(test);
     }
 
     @Override
@@ -221,7 +313,7 @@ public class BoostingAdditiveRegressionClassifier extends IteratedSingleClassifi
 
         for (int i = 0; i < m_TestData.numInstances(); i++) {
             originalUtility.add(m_TestData.instance(i).classValue());
-            predictedUtility.add(this.classifyInstance(m_TestData.instance(i)));
+            predictedUtility.add(m_Predictions[i]);
         }
 
         return Utils.ncg(predictedUtility, originalUtility).stream().mapToDouble(r -> r).toArray();
@@ -0,0 +1,10 @@
+package org.trofiv;
+
+import weka.classifiers.Classifier;
+
+import java.io.Serializable;
+
+public interface ClassifierFactory extends Serializable {
+    @SuppressWarnings("ProhibitedExceptionDeclared")
+    Classifier newClassifier() throws Exception;
+}
@@ -0,0 +1,390 @@
+package org.trofiv;
+
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Boosted regression trees laid out node by node in flat arrays, so that prediction is a loop over primitive arrays
+ * without recursion, copies of class distributions or allocation. Successors of a node are consecutive: numeric
+ * attributes go to the first one below the split point and to the second one otherwise, nominal attributes go by
+ * value. Instance with missing value of the split attribute is split up by proportions of training weight, like the
+ * tree does.
+ */
+@SuppressWarnings("WeakerAccess")
+final class FlatEnsemble implements Serializable {
+    /**
+     * Subtrees up to this size are inlined into the source of their parent, larger ones get methods of their own.
+     */
+    private static final int MAX_INLINE_NODES = 64;
+    /**
+     * Bounds on trees and nodes of a generated part class, its split points and means go to its constant pool.
+     */
+    private static final int MAX_PART_TREES = 512;
+    private static final int MAX_PART_NODES = 8192;
+    /**
+     * Trees or parts summed by one generated method.
+     */
+    private static final int MAX_CALLS_PER_METHOD = 64;
+
+    private final double shrinkage;
+    /**
+     * Root node of every tree.
+     */
+    private final int[] roots;
+    /**
+     * Split attribute of every node, -1 for leaves.
+     */
+    private final int[] attributes;
+    private final boolean[] nominal;
+    private final double[] splitPoints;
+    /**
+     * First successor of every node.
+     */
+    private final int[] successors;
+    private final int[] numSuccessors;
+    /**
+     * Proportion of training weight which went down to every node.
+     */
+    private final double[] props;
+    /**
+     * Mean of every node, <tt>NaN</tt> if it had no training instances.
+     */
+    private final double[] values;
+    private int numNodes;
+
+    private FlatEnsemble(final int numTrees, final int numNodes, final double shrinkage) {
+        this.shrinkage = shrinkage;
+        roots = new int[numTrees];
+        attributes = new int[numNodes];
+        nominal = new boolean[numNodes];
+        splitPoints = new double[numNodes];
+        successors = new int[numNodes];
+        numSuccessors = new int[numNodes];
+        props = new double[numNodes];
+        values = new double[numNodes];
+    }
+
+    /**
+     * Lays out trees of the ensemble.
+     *
+     * @param classifiers    base classifiers of the ensemble
+     * @param numClassifiers number of base classifiers actually built
+     * @param shrinkage      learning rate
+     * @return the flat ensemble, <tt>null</tt> if not all base classifiers are regression trees
+     */
+    static FlatEnsemble of(final Classifier[] classifiers, final int numClassifiers, final double shrinkage) {
+        int numNodes = 0;
+        for (int i = 0; i < numClassifiers; i++) {
+            if (!(classifiers[i] instanceof RegressionDecisionTree)) {
+                return null;
+            }
+
+            final RegressionDecisionTree tree = (RegressionDecisionTree) classifiers[i];
+            if (tree.m_zeroR != null || tree.m_Tree == null) {
+                return null;
+            }
+            numNodes += count(tree.m_Tree);
+        }
+
+        final FlatEnsemble ensemble = new FlatEnsemble(numClassifiers, numNodes, shrinkage);
+        for (int i = 0; i < numClassifiers; i++) {
+            ensemble.roots[i] = ensemble.numNodes++;
+            ensemble.add(((RegressionDecisionTree) classifiers[i]).m_Tree, ensemble.roots[i], 1);
+        }
+
+        return ensemble;
+    }
+
+    /**
+     * Adds predictions of all trees to the prediction.
+     *
+     * @param prediction the prediction to start with
+     * @param instance   attribute values of the instance, see {@link Instance#toDoubleArray()}
+     * @return the prediction
+     */
+    double predict(final double prediction, final double[] instance) {
+        double result = prediction;
+        for (int root : roots) {
+            result += predict(root, instance) * shrinkage;
+        }
+
+        return result;
+    }
+
+    /**
+     * Adds predictions of all trees to predictions of a block of instances. The block is scored tree by tree, so that
+     * a tree stays in cache while its instances go through it.
+     *
+     * @param predictions the predictions to start with, one per instance
+     * @param instances   attribute values of the instances
+     * @param start       the first instance of the block
+     * @param end         the end of the block
+     */
+    void predict(final double[] predictions, final double[][] instances, final int start, final int end) {
+        for (int root : roots) {
+            for (int i = start; i < end; i++) {
+                predictions[i] += predict(root, instances[i]) * shrinkage;
+            }
+        }
+    }
+
+    private double predict(final int root, final double[] instance) {
+        // successor which had no training instances takes mean of its parent
+        double parentValue = Double.NaN;
+        int node = root;
+
+        while (attributes[node] >= 0) {
+            final double value = instance[attributes[node]];
+            if (Instance.isMissingValue(value)) {
+                return splitUp(node, instance);
+            }
+
+            parentValue = values[node];
+            //noinspection NumericCastThatLosesPrecision
+            node = successors[node] + (nominal[node] ? (int) value : value < splitPoints[node] ? 0 : 1);
+        }
+
+        return Double.isNaN(values[node]) ? parentValue : values[node];
+    }
+
+    /**
+     * Predicts instance with missing value of the split attribute of the node.
+     *
+     * @param node     the node
+     * @param instance attribute values of the instance
+     * @return sum of predictions of successors weighted by proportions of training weight
+     */
+    double splitUp(final int node, final double[] instance) {
+        double prediction = 0;
+
+        for (int i = successors[node]; i < successors[node] + numSuccessors[node]; i++) {
+            final double help = predict(i, instance);
+            if (!Double.isNaN(help)) {
+                prediction += props[i] * help;
+            }
+        }
+
+        return prediction;
+    }
+
+    /**
+     * Returns source code of classes which predict the same as {@link #predict(double, double[])}, with split points
+     * and means inlined as if statements. The class with the given name implements
+     * <tt>ToDoubleFunction&lt;double[]&gt;</tt> and is constructed with a <tt>ToDoubleBiFunction&lt;double[],
+     * Integer&gt;</tt>, which instances with missing value of a split attribute are handed over to, see
+     * {@link #splitUp(int, double[])}.
+     * <p>
+     * Trees are spread over part classes, so that constant pool of every class stays bounded however many trees there
+     * are. Trees are summed in chunks and large subtrees get methods of their own, so that methods stay small enough
+     * for JIT compilation.
+     *
+     * @param className  the name for the generated class, part classes get it as prefix
+     * @param prediction the prediction to start with
+     * @return source code of every generated class by its name
+     */
+    Map<String, String> toSource(final String className, final double prediction) {
+        // successors are laid out after their parents
+        final int[] sizes = new int[attributes.length];
+        for (int node = attributes.length - 1; node >= 0; node--) {
+            sizes[node] = 1;
+            if (attributes[node] >= 0) {
+                for (int i = successors[node]; i < successors[node] + numSuccessors[node]; i++) {
+                    sizes[node] += sizes[i];
+                }
+            }
+        }
+
+        final Map<String, String> sources = new LinkedHashMap<>();
+        final List<String> parts = new ArrayList<>();
+
+        int first = 0;
+        while (first < roots.length) {
+            int end = first + 1;
+            int numPartNodes = sizes[roots[first]];
+            while (end < roots.length && end - first < MAX_PART_TREES
+                    && numPartNodes + sizes[roots[end]] <= MAX_PART_NODES) {
+                numPartNodes += sizes[roots[end]];
+                end++;
+            }
+
+            final String partName = className + '_' + parts.size();
+            sources.put(partName, partSource(partName, first, end, sizes));
+            parts.add(partName);
+            first = end;
+        }
+
+        final StringBuilder text = new StringBuilder();
+        text.append("public final class ").append(className)
+                .append(" implements java.util.function.ToDoubleFunction<double[]> {\n");
+        for (int k = 0; k < parts.size(); k++) {
+            text.append("  private final ").append(parts.get(k)).append(" p").append(k).append(";\n");
+        }
+        text.append("\n  public ").append(className)
+                .append("(final java.util.function.ToDoubleBiFunction<double[], Integer> m) {\n");
+        for (int k = 0; k < parts.size(); k++) {
+            text.append("    p").append(k).append(" = new ").append(parts.get(k)).append("(m);\n");
+        }
+        text.append("  }\n\n")
+                .append("  @Override\n")
+                .append("  public double applyAsDouble(final double[] i) {\n")
+                .append("    double p = ").append(literal(prediction)).append(";\n");
+        for (int chunk = 0; chunk < parts.size(); chunk += MAX_CALLS_PER_METHOD) {
+            text.append("    p = c").append(chunk / MAX_CALLS_PER_METHOD).append("(i, p);\n");
+        }
+        text.append("    return p;\n")
+                .append("  }\n");
+        for (int chunk = 0; chunk < parts.size(); chunk += MAX_CALLS_PER_METHOD) {
+            text.append("\n  private double c").append(chunk / MAX_CALLS_PER_METHOD)
+                    .append("(final double[] i, double p) {\n");
+            for (int k = chunk; k < Math.min(chunk + MAX_CALLS_PER_METHOD, parts.size()); k++) {
+                text.append("    p = p").append(k).append(".add(i, p);\n");
+            }
+            text.append("    return p;\n")
+                    .append("  }\n");
+        }
+        sources.put(className, text.append("}\n").toString());
+
+        return sources;
+    }
+
+    /**
+     * Returns source code of a part class, which adds predictions of its trees to the prediction it's given.
+     *
+     * @param partName the name for the part class
+     * @param first    the first tree of the part
+     * @param end      the end of trees of the part
+     * @param sizes    number of nodes of every subtree
+     * @return source code of the part class
+     */
+    private String partSource(final String partName, final int first, final int end, final int[] sizes) {
+        final StringBuilder text = new StringBuilder();
+        text.append("public final class ").append(partName).append(" {\n")
+                .append("  private final java.util.function.ToDoubleBiFunction<double[], Integer> m;\n\n")
+                .append("  public ").append(partName)
+                .append("(final java.util.function.ToDoubleBiFunction<double[], Integer> m) {\n")
+                .append("    this.m = m;\n")
+                .append("  }\n\n")
+                .append("  public double add(final double[] i, double p) {\n");
+        for (int chunk = first; chunk < end; chunk += MAX_CALLS_PER_METHOD) {
+            text.append("    p = t").append(chunk).append("(i, p);\n");
+        }
+        text.append("    return p;\n")
+                .append("  }\n");
+
+        final Deque<Integer> methods = new ArrayDeque<>();
+        for (int chunk = first; chunk < end; chunk += MAX_CALLS_PER_METHOD) {
+            text.append("\n  private double t").append(chunk).append("(final double[] i, double p) {\n");
+            for (int tree = chunk; tree < Math.min(chunk + MAX_CALLS_PER_METHOD, end); tree++) {
+                text.append("    p += n").append(roots[tree]).append("(i) * ").append(literal(shrinkage)).append(";\n");
+                methods.add(roots[tree]);
+            }
+            text.append("    return p;\n")
+                    .append("  }\n");
+        }
+
+        while (!methods.isEmpty()) {
+            final int node = methods.poll();
+            text.append("\n  private double n").append(node).append("(final double[] i) {\n");
+            nodeSource(text, node, Double.NaN, "    ", sizes, methods);
+            text.append("  }\n");
+        }
+
+        return text.append("}\n").toString();
+    }
+
+    @SuppressWarnings("MethodWithTooManyParameters")
+    private void nodeSource(
+            final StringBuilder text,
+            final int node,
+            final double parentValue,
+            final String indent,
+            final int[] sizes,
+            final Deque<Integer> methods) {
+        if (attributes[node] < 0) {
+            text.append(indent).append("return ")
+                    .append(literal(Double.isNaN(values[node]) ? parentValue : values[node])).append(";\n");
+            return;
+        }
+
+        final String value = "i[" + attributes[node] + ']';
+        text.append(indent).append("if (Double.isNaN(").append(value).append(")) {\n")
+                .append(indent).append("  return m.applyAsDouble(i, ").append(node).append(");\n")
+                .append(indent).append("}\n");
+
+        if (nominal[node]) {
+            text.append(indent).append("switch ((int) ").append(value).append(") {\n");
+            for (int k = 0; k < numSuccessors[node]; k++) {
+                text.append(indent).append(k < numSuccessors[node] - 1 ? "  case " + k + ":\n" : "  default:\n");
+                successorSource(text, successors[node] + k, values[node], indent + "    ", sizes, methods);
+            }
+            text.append(indent).append("}\n");
+        } else {
+            text.append(indent).append("if (").append(value).append(" < ").append(literal(splitPoints[node]))
+                    .append(") {\n");
+            successorSource(text, successors[node], values[node], indent + "  ", sizes, methods);
+            text.append(indent).append("}\n");
+            successorSource(text, successors[node] + 1, values[node], indent, sizes, methods);
+        }
+    }
+
+    @SuppressWarnings("MethodWithTooManyParameters")
+    private void successorSource(
+            final StringBuilder text,
+            final int node,
+            final double parentValue,
+            final String indent,
+            final int[] sizes,
+            final Deque<Integer> methods) {
+        if (sizes[node] > MAX_INLINE_NODES) {
+            text.append(indent).append("return n").append(node).append("(i);\n");
+            methods.add(node);
+        } else {
+            nodeSource(text, node, parentValue, indent, sizes, methods);
+        }
+    }
+
+    private static String literal(final double value) {
+        if (Double.isNaN(value)) {
+            return "Double.NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "Double.POSITIVE_INFINITY" : "Double.NEGATIVE_INFINITY";
+        }
+        return Double.toString(value);
+    }
+
+    private void add(final RegressionDecisionTree.Tree tree, final int node, final double prop) {
+        attributes[node] = tree.m_Attribute;
+        props[node] = prop;
+        values[node] = tree.m_ClassProbs == null ? Double.NaN : tree.m_ClassProbs[0];
+
+        if (tree.m_Attribute == -1) {
+            return;
+        }
+
+        nominal[node] = tree.m_Info.attribute(tree.m_Attribute).isNominal();
+        splitPoints[node] = tree.m_SplitPoint;
+        successors[node] = numNodes;
+        numSuccessors[node] = tree.m_Successors.length;
+        numNodes += tree.m_Successors.length;
+
+        for (int i = 0; i < tree.m_Successors.length; i++) {
+            add(tree.m_Successors[i], successors[node] + i, tree.m_Prop[i]);
+        }
+    }
+
+    private static int count(final RegressionDecisionTree.Tree tree) {
+        int count = 1;
+
+        if (tree.m_Attribute != -1) {
+            for (RegressionDecisionTree.Tree successor : tree.m_Successors) {
+                count += count(successor);
+            }
+        }
+
+        return count;
+    }
+}
@@ -3,6 +3,14 @@ package org.trofiv;
 import weka.core.Instances;
 
 interface ImprovedClassifier {
+    /**
+     * Builds the classifier and predicts the test data once, metrics reuse the predictions. The test data is kept
+     * without copying and mustn't be modified until metrics are computed.
+     *
+     * @param train the data to train with
+     * @param test  the data to evaluate on
+     * @throws Exception if building or prediction fails
+     */
     @SuppressWarnings("ProhibitedExceptionDeclared")
     void evaluate(final Instances train, final Instances test) throws Exception;
 
@@ -10,4 +18,14 @@ interface ImprovedClassifier {
 
     @SuppressWarnings("ProhibitedExceptionDeclared")
     double[] ncg() throws Exception;
+
+    /**
+     * Predicts all instances at once, the same as classifying them one by one.
+     *
+     * @param data the instances to predict
+     * @return prediction for every instance
+     * @throws Exception if an instance can't be predicted
+     */
+    @SuppressWarnings("ProhibitedExceptionDeclared")
+    double[] predictAll(final Instances data) throws Exception;
 }
\ No newline at end of file
@@ -2,7 +2,6 @@ package org.trofiv;
 
 import org.apache.commons.lang.ArrayUtils;
 import weka.classifiers.Classifier;
-import weka.classifiers.Evaluation;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.WeightedInstancesHandler;
@@ -59,6 +58,10 @@ public class LinearRegressionClassifier extends Classifier implements
      * Test data instances
      */
     private Instances m_TestData;
+    /**
+     * Predictions for test data instances
+     */
+    private double[] m_Predictions;
 
     /**
      * Builds a regression model for the given data.
@@ -132,17 +135,59 @@ public class LinearRegressionClassifier extends Classifier implements
     @SuppressWarnings("ProhibitedExceptionDeclared")
     @Override
     public double classifyInstance(final Instance instance) throws Exception {
-        // Transform the input instance
+        // Calculate the dependent variable from the regression model
+        return regressionPrediction(transform(instance), m_SelectedAttributes, m_Coefficients);
+    }
+
+    /**
+     * Predicts all instances as a dot product of their transformed values with coefficients of selected attributes.
+     *
+     * @param data the instances to predict
+     * @return prediction for every instance
+     * @throws Exception if an instance can't be transformed
+     */
+    @Override
+    @SuppressWarnings("ProhibitedExceptionDeclared")
+    public double[] predictAll(final Instances data) throws Exception {
+        int numColumns = 0;
+        final int[] columns = new int[m_SelectedAttributes.length];
+        for (int j = 0; j < m_SelectedAttributes.length; j++) {
+            if (m_ClassIndex != j && m_SelectedAttributes[j]) {
+                columns[numColumns++] = j;
+            }
+        }
+
+        final double[] predictions = new double[data.numInstances()];
+        for (int i = 0; i < data.numInstances(); i++) {
+            // filters keep state, instances are transformed one by one
+            final double[] values = transform(data.instance(i)).toDoubleArray();
+
+            double result = 0;
+            for (int k = 0; k < numColumns; k++) {
+                result += m_Coefficients[k] * values[columns[k]];
+            }
+            predictions[i] = result + m_Coefficients[numColumns];
+        }
+
+        return predictions;
+    }
+
+    /**
+     * Transforms the instance the same as the training data.
+     *
+     * @param instance the instance
+     * @return the transformed instance
+     * @throws Exception if the instance can't be transformed
+     */
+    @SuppressWarnings("ProhibitedExceptionDeclared")
+    private Instance transform(final Instance instance) throws Exception {
         m_TransformFilter.input(instance);
         m_TransformFilter.batchFinished();
         final Instance output = m_TransformFilter.output();
 
         m_MissingFilter.input(output);
         m_MissingFilter.batchFinished();
-        final Instance newOutput = m_MissingFilter.output();
-
-        // Calculate the dependent variable from the regression model
-        return regressionPrediction(newOutput, m_SelectedAttributes, m_Coefficients);
+        return m_MissingFilter.output();
     }
 
     /**
@@ -155,7 +200,7 @@ public class LinearRegressionClassifier extends Classifier implements
 
     /**
      * Calculate the squared error of a regression model on the
-     * training data
+     * training data, weighted by instance weights
      *
      * @param selectedAttributes an array of flags indicating which
      *                           attributes are included in the regression model
@@ -171,7 +216,7 @@ public class LinearRegressionClassifier extends Classifier implements
         for (int i = 0; i < m_TransformedData.numInstances(); i++) {
             final double prediction = regressionPrediction(m_TransformedData.instance(i), selectedAttributes, coefficients);
             final double error = prediction - m_TransformedData.instance(i).classValue();
-            mse += error * error;
+            mse += m_TransformedData.instance(i).weight() * error * error;
         }
 
         return mse;
@@ -286,10 +331,9 @@ public class LinearRegressionClassifier extends Classifier implements
     @Override
     @SuppressWarnings("ProhibitedExceptionDeclared")
     public void evaluate(final Instances train, final Instances test) throws Exception {
-        final Evaluation evaluation = new Evaluation(train);
         this.buildClassifier(train);
-        evaluation.evaluateModel(this, test);
-        m_TestData = new Instances(test);
+        m_TestData = test;
+        m_Predictions = predictAll(test);
     }
 
     @Override
@@ -316,7 +360,7 @@ public class LinearRegressionClassifier extends Classifier implements
 
         for (int i = 0; i < m_TestData.numInstances(); i++) {
             originalUtility.add(m_TestData.instance(i).classValue());
-            predictedUtility.add(this.classifyInstance(m_TestData.instance(i)));
+            predictedUtility.add(m_Predictions[i]);
         }
 
         return Utils.ncg(predictedUtility, originalUtility).stream().mapToDouble(r -> r).toArray();
@@ -5,17 +5,24 @@ import org.apache.commons.csv.CSVPrinter;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.apache.commons.math.stat.descriptive.rank.Percentile;
+import weka.classifiers.Classifier;
 import weka.core.Instances;
+import weka.core.WeightedInstancesHandler;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 @SuppressWarnings("WeakerAccess")
@@ -25,18 +32,26 @@ public class MLProcessor {
     private static final double QUANTILE_90_TH = 90.0;
     private static final double MEDIAN_QUANTILE = 50.0;
     private static final int NUM_BOOSTING_ITERATIONS = 5000;
+    /**
+     * Whether classifiers handling weighted instances train on bootstrap replicates kept as instance weights, see
+     * {@link WeightedBootstrap}, instead of resampled copies of the data.
+     */
+    private static final boolean WEIGHTED_BOOTSTRAP = true;
 
-    private static final Random RANDOM = new SecureRandom();
+    private static final RandomStreams RANDOM_STREAMS = RandomStreams.fromSystemProperties();
     private static final Percentile QUANTILE = new Percentile();
     private static final String INPUT_DIRECTORIES_LOCATION = "../";
     private static final Pattern INPUT_FILES = Pattern.compile(".*arff");
     private static final Pattern INPUT_DIRECTORIES = Pattern.compile("keywords.*");
+    private static final String WATCH_MODE = "--watch";
+    private static final String MANIFEST = ".mlprocessor_manifest";
     private static final Collection<ImprovedClassifier> CLASSIFIERS = new LinkedList<>();
+    private static final int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService THREAD_POOL = Executors.newFixedThreadPool(NUM_THREADS);
 
     static {
-        final RegressionDecisionTree tree = new RegressionDecisionTree();
-
-        final BoostingAdditiveRegressionClassifier boosting = new BoostingAdditiveRegressionClassifier(tree);
+        final BoostingAdditiveRegressionClassifier boosting =
+                new BoostingAdditiveRegressionClassifier(new RegressionDecisionTree(), RegressionDecisionTree::new);
         boosting.setNumIterations(NUM_BOOSTING_ITERATIONS);
 
         //noinspection TypeMayBeWeakened
@@ -56,6 +71,14 @@ public class MLProcessor {
                 throw new IllegalArgumentException("No one input directory found!");
             }
 
+            if (Arrays.asList(args).contains(WATCH_MODE)) {
+                final Manifest manifest = new Manifest(new File(workDirectory, MANIFEST), String.join(" ", args));
+                // results are written per data set file, there is nothing to do after a batch
+                new InputWatcher(keywordDirectories, INPUT_FILES, manifest, MLProcessor::hasOutputs)
+                        .watch(MLProcessor::processFile, () -> {});
+                return;
+            }
+
             for (File dir : keywordDirectories) {
                 final File[] fileToProcess = dir.listFiles(path ->
                         path.isFile() && INPUT_FILES.matcher(path.getName()).matches());
@@ -71,17 +94,40 @@ public class MLProcessor {
         } catch (IOException e) {
             System.out.println("Can't access working directory or missing dataset files");
             System.out.println(e.getLocalizedMessage());
+        } finally {
+            THREAD_POOL.shutdown();
         }
     }
 
-    private static void processFile(final File fileName) {
+    /**
+     * Analyzes the data set file and writes results of every classifier next to it.
+     *
+     * @param fileName the data set file
+     * @return whether results of all classifiers are written
+     */
+    private static boolean processFile(final File fileName) {
         final Instances data = readData(fileName);
         System.out.println("Process file " + fileName + ':');
-        final List<BootstrapResults> results = analyze(data);
+        final String dataset = fileName.getParentFile().getName() + '/' + fileName.getName();
+        final List<BootstrapResults> results = analyze(data, dataset);
+        boolean written = results.size() == CLASSIFIERS.size();
 
         for (BootstrapResults result : results) {
-            printResults(fileName, result);
+            written &= printResults(fileName, result);
         }
+
+        return written;
+    }
+
+    // results of every classifier are written for the data set file
+    private static boolean hasOutputs(final File fileName) {
+        return CLASSIFIERS.stream()
+                .allMatch(classifier -> resultFile(fileName, classifier.getClass().getSimpleName()).isFile());
+    }
+
+    private static File resultFile(final File fileName, final String classifierName) {
+        final String baseName = fileName.getAbsolutePath().substring(0, fileName.getAbsolutePath().lastIndexOf('.'));
+        return new File(baseName + '_' + classifierName + ".tsv");
     }
 
     private static Instances readData(final File file) {
@@ -97,7 +143,7 @@ public class MLProcessor {
         }
     }
 
-    private static List<BootstrapResults> analyze(final Instances data) {
+    private static List<BootstrapResults> analyze(final Instances data, final String dataset) {
         final List<BootstrapResults> result = new LinkedList<>();
 
         for (ImprovedClassifier classifier : CLASSIFIERS) {
@@ -107,15 +153,7 @@ public class MLProcessor {
                 final double[][] quality = new double[BOOTSTRAP_COUNT][];
                 final double[][] ncg = new double[BOOTSTRAP_COUNT][];
 
-                for (int i = 0; i < BOOTSTRAP_COUNT; i++) {
-                    System.out.print("      Bootstrap iteration " + i + " of " + BOOTSTRAP_COUNT + '\r');
-
-                    final Instances trainData = data.resample(RANDOM);
-                    classifier.evaluate(trainData, data);
-
-                    quality[i] = classifier.attributeQuality();
-                    ncg[i] = classifier.ncg();
-                }
+                bootstrap(classifier, data, dataset, quality, ncg);
 
                 final List<double[]> zippedNcg = Utils.zip(ncg);
                 final List<double[]> zippedQuality = Utils.zip(quality);
@@ -139,11 +177,67 @@ public class MLProcessor {
         return result;
     }
 
-    private static void printResults(final File fileName, final BootstrapResults result) {
-        final String baseName = fileName.getAbsolutePath().substring(0, fileName.getAbsolutePath().lastIndexOf('.'));
-        final String resultFileName = baseName + '_' + result.getClassifierName() + ".tsv";
+    /**
+     * Runs bootstrap iterations on the thread pool. Every worker evaluates its own copy of the classifier on its own
+     * copy of the data. Replicate <tt>i</tt> is drawn with a random number generator of its own, see
+     * {@link RandomStreams}, and its results go to slot <tt>i</tt>, so that results don't depend on the number of
+     * threads.
+     *
+     * @param classifier the classifier to copy
+     * @param data       the data to draw replicates from and evaluate on
+     * @param dataset    the name of the data set
+     * @param quality    attribute quality of every replicate, filled in
+     * @param ncg        ncg of every replicate, filled in
+     * @throws Exception if a classifier can't be copied or evaluated
+     */
+    @SuppressWarnings("ProhibitedExceptionDeclared")
+    private static void bootstrap(
+            final ImprovedClassifier classifier,
+            final Instances data,
+            final String dataset,
+            final double[][] quality,
+            final double[][] ncg) throws Exception {
+        final int numWorkers = Math.min(NUM_THREADS, BOOTSTRAP_COUNT);
+        final AtomicInteger completed = new AtomicInteger();
+        final List<Future<?>> workers = new ArrayList<>(numWorkers);
+
+        for (int worker = 0; worker < numWorkers; worker++) {
+            final int first = worker;
+            workers.add(THREAD_POOL.submit(() -> {
+                final ImprovedClassifier copy = (ImprovedClassifier) Classifier.makeCopy((Classifier) classifier);
+                final Instances ownData = new Instances(data);
+                final WeightedBootstrap bootstrap = WEIGHTED_BOOTSTRAP && copy instanceof WeightedInstancesHandler
+                        ? new WeightedBootstrap(ownData) : null;
+
+                for (int i = first; i < BOOTSTRAP_COUNT; i += numWorkers) {
+                    final Random random = RANDOM_STREAMS.replicate(dataset, classifier.getClass().getName(), i);
+                    final Instances trainData = bootstrap == null ? ownData.resample(random) : bootstrap.draw(random);
+                    copy.evaluate(trainData, ownData);
+
+                    quality[i] = copy.attributeQuality();
+                    ncg[i] = copy.ncg();
+
+                    System.out.print("      Bootstrap iteration " + completed.incrementAndGet() + " of "
+                            + BOOTSTRAP_COUNT + '\r');
+                }
+
+                return null;
+            }));
+        }
+
+        try {
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            workers.forEach(worker -> worker.cancel(true));
+        }
+    }
+
+    private static boolean printResults(final File fileName, final BootstrapResults result) {
+        final File resultFile = resultFile(fileName, result.getClassifierName());
 
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(resultFileName), StandardCharsets.UTF_8)) {
+        try (BufferedWriter writer = Files.newBufferedWriter(resultFile.toPath(), StandardCharsets.UTF_8)) {
             final CSVPrinter out = CSVFormat.MYSQL.print(writer);
 
             out.printRecord("Results for " + result.getClassifierName());
@@ -160,8 +254,10 @@ public class MLProcessor {
             for (Triple<Double, Double, Double> quantiles : result.getQuantiles()) {
                 out.printRecord(count++, quantiles.getLeft(), quantiles.getMiddle(), quantiles.getRight());
             }
+            return true;
         } catch (IOException e) {
             e.printStackTrace();
+            return false;
         }
     }
 
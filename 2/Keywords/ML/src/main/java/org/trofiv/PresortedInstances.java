@@ -0,0 +1,83 @@
+package org.trofiv;
+
+import weka.core.Instances;
+
+/**
+ * Training data with its split into growing and pruning sets and attribute values of the growing set sorted once, so
+ * that many trees can be built on it with different targets, like boosting does. Indices refer to instances of the
+ * data.
+ */
+@SuppressWarnings("WeakerAccess")
+final class PresortedInstances {
+    /**
+     * The data.
+     */
+    final Instances data;
+    /**
+     * Instances trees are grown on, in the order of building.
+     */
+    final int[] train;
+    /**
+     * Hold-out instances for pruning.
+     */
+    final int[] prune;
+    /**
+     * Growing instances sorted by every attribute, missing values last; <tt>null</tt> for the class and if the data
+     * can't be presorted.
+     */
+    final int[][] sortedIndices;
+    /**
+     * Weights of instances in <tt>sortedIndices</tt>.
+     */
+    final double[][] weights;
+    /**
+     * Bin of every instance by every attribute for histogram split finding, <tt>null</tt> if not binned. Nominal
+     * attributes are binned by value; numeric values below <tt>cuts[att][b]</tt> fall into bins up to <tt>b</tt>.
+     */
+    final int[][] bins;
+    /**
+     * Bin of missing values of every attribute, the last one.
+     */
+    final int[] missingBin;
+    /**
+     * Boundaries between bins of numeric attributes, they are also the split points.
+     */
+    final double[][] cuts;
+
+    /**
+     * Data which isn't presorted, trees are built on its copy.
+     *
+     * @param data the data
+     */
+    PresortedInstances(final Instances data) {
+        this(data, null, null, null, null, null, null, null);
+    }
+
+    @SuppressWarnings("MethodWithTooManyParameters")
+    PresortedInstances(
+            final Instances data,
+            final int[] train,
+            final int[] prune,
+            final int[][] sortedIndices,
+            final double[][] weights,
+            final int[][] bins,
+            final int[] missingBin,
+            final double[][] cuts) {
+        this.data = data;
+        this.train = train;
+        this.prune = prune;
+        this.sortedIndices = sortedIndices;
+        this.weights = weights;
+        this.bins = bins;
+        this.missingBin = missingBin;
+        this.cuts = cuts;
+    }
+
+    boolean isPresorted() {
+        return sortedIndices != null;
+    }
+
+    boolean isBinned() {
+        return bins != null;
+    }
+}
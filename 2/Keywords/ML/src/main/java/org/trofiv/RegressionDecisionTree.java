@@ -9,6 +9,7 @@ import weka.core.Utils;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.stream.IntStream;
 
 @SuppressWarnings({"CloneableClassWithoutClone", "WeakerAccess"})
 public class RegressionDecisionTree extends Classifier
@@ -33,7 +34,19 @@ public class RegressionDecisionTree extends Classifier
      * Upper bound on the tree depth
      */
     protected static final int M_MAX_DEPTH = -1;
+    /**
+     * Default minimum number of instances in a node for evaluating its attributes in parallel.
+     */
+    protected static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+    /**
+     * Upper bound on the number of bins of a numeric attribute.
+     */
+    protected static final int MAX_BINS = 256;
     private static final String NO_MODEL_BUILT_YET = "REPTree: No model built yet.";
+    /**
+     * Marks instance which was split up between several leaves by missing values.
+     */
+    private static final Tree SPLIT_INSTANCE = new Tree();
     /**
      * ZeroR model that is used if no attributes are present.
      */
@@ -47,6 +60,36 @@ public class RegressionDecisionTree extends Classifier
      */
     @SuppressWarnings("unused")
     protected boolean m_NoPruning;
+    /**
+     * Number of bins of numeric attributes for histogram split finding, zero means exact split finding
+     */
+    protected int m_NumBins;
+    /**
+     * Minimum number of instances in a node for evaluating its attributes in parallel
+     */
+    protected int m_ParallelThreshold = DEFAULT_PARALLEL_THRESHOLD;
+
+    /**
+     * Tree which finds the best split among all values of numeric attributes.
+     */
+    public RegressionDecisionTree() {
+    }
+
+    /**
+     * Tree which bins numeric attributes into quantile bins once and finds splits only between bins. Every node keeps
+     * histograms of targets and weights per bin instead of scanning sorted instances, and histograms of the largest
+     * successor are computed by subtracting its siblings from the parent, unless instances with missing values are
+     * split up between successors. Attributes with at most <tt>numBins</tt> distinct values get a bin per value and
+     * the same split candidates as exact split finding. Used for numeric class only.
+     *
+     * @param numBins the maximum number of bins of a numeric attribute, from 2 to 256
+     */
+    public RegressionDecisionTree(final int numBins) {
+        if (numBins < 2 || numBins > MAX_BINS) {
+            throw new IllegalArgumentException("Number of bins must be from 2 to " + MAX_BINS);
+        }
+        m_NumBins = numBins;
+    }
 
     private static void traverseTree(final Tree tree, final Map<Integer, List<Double>> map) {
         for (Object subTreeBase : ArrayUtils.nullToEmpty(tree.m_Successors)) {
@@ -66,6 +109,28 @@ public class RegressionDecisionTree extends Classifier
         }
     }
 
+    /**
+     * Returns the minimum number of instances in a node for evaluating its attributes in parallel.
+     *
+     * @return the threshold
+     */
+    public int getParallelThreshold() {
+        return m_ParallelThreshold;
+    }
+
+    /**
+     * Sets the minimum number of instances in a node for evaluating its attributes in parallel on the common
+     * fork-join pool. Smaller nodes are evaluated sequentially, parallelism doesn't change the built tree.
+     *
+     * @param threshold the threshold, <tt>Integer.MAX_VALUE</tt> disables parallel evaluation
+     */
+    public void setParallelThreshold(final int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Parallel threshold must be positive");
+        }
+        m_ParallelThreshold = threshold;
+    }
+
     /**
      * Builds classifier.
      *
@@ -79,6 +144,16 @@ public class RegressionDecisionTree extends Classifier
         // can classifier handle the data?
         getCapabilities().testWithFail(data);
 
+        // histograms are built on presorted data, instances with missing class are skipped there
+        if (m_NumBins > 0 && data.numAttributes() > 1 && data.classAttribute().isNumeric()) {
+            final double[] targets = new double[data.numInstances()];
+            for (int i = 0; i < data.numInstances(); i++) {
+                targets[i] = data.instance(i).classValue();
+            }
+            buildWithPredictions(presort(data, targets), targets);
+            return;
+        }
+
         // remove instances with missing class
         data = new Instances(data);
         data.deleteWithMissingClass();
@@ -112,31 +187,31 @@ public class RegressionDecisionTree extends Classifier
         }
 
         // Create array of sorted indices and weights
-        final int[][][] sortedIndices = new int[1][train.numAttributes()][0];
-        final double[][][] weights = new double[1][train.numAttributes()][0];
+        final int[][] sortedIndices = new int[train.numAttributes()][];
+        final double[][] weights = new double[train.numAttributes()][];
         final double[] vals = new double[train.numInstances()];
 
         for (int j = 0; j < train.numAttributes(); j++) {
             if (j != train.classIndex()) {
-                weights[0][j] = new double[train.numInstances()];
+                weights[j] = new double[train.numInstances()];
                 if (train.attribute(j).isNominal()) {
                     // Handling nominal attributes. Putting indices of
                     // instances with missing values at the end.
-                    sortedIndices[0][j] = new int[train.numInstances()];
+                    sortedIndices[j] = new int[train.numInstances()];
                     int count = 0;
                     for (int i = 0; i < train.numInstances(); i++) {
                         final Instance inst = train.instance(i);
                         if (!inst.isMissing(j)) {
-                            sortedIndices[0][j][count] = i;
-                            weights[0][j][count] = inst.weight();
+                            sortedIndices[j][count] = i;
+                            weights[j][count] = inst.weight();
                             count++;
                         }
                     }
                     for (int i = 0; i < train.numInstances(); i++) {
                         final Instance inst = train.instance(i);
                         if (inst.isMissing(j)) {
-                            sortedIndices[0][j][count] = i;
-                            weights[0][j][count] = inst.weight();
+                            sortedIndices[j][count] = i;
+                            weights[j][count] = inst.weight();
                             count++;
                         }
                     }
@@ -146,14 +221,19 @@ public class RegressionDecisionTree extends Classifier
                         final Instance inst = train.instance(i);
                         vals[i] = inst.value(j);
                     }
-                    sortedIndices[0][j] = Utils.sort(vals);
+                    sortedIndices[j] = Utils.sort(vals);
                     for (int i = 0; i < train.numInstances(); i++) {
-                        weights[0][j][i] = train.instance(sortedIndices[0][j][i]).weight();
+                        weights[j][i] = train.instance(sortedIndices[j][i]).weight();
                     }
                 }
             }
         }
 
+        final double[] targets = new double[train.numInstances()];
+        for (int i = 0; i < train.numInstances(); i++) {
+            targets[i] = train.instance(i).classValue();
+        }
+
         // Compute initial class counts
         final double[] classProbs = new double[train.numClasses()];
         double totalWeight = 0, totalSumSquared = 0;
@@ -181,9 +261,9 @@ public class RegressionDecisionTree extends Classifier
         }
 
         // Build tree
-        m_Tree.buildTree(sortedIndices, weights, train, totalWeight, classProbs,
-                new Instances(train, 0), M_MIN_NUM, M_MIN_VARIANCE_PROP *
-                        trainVariance, 0, M_MAX_DEPTH);
+        final TreeBuilder builder = new TreeBuilder(train, targets, new Instances(train, 0), M_MIN_NUM,
+                M_MIN_VARIANCE_PROP * trainVariance, M_MAX_DEPTH, m_ParallelThreshold, null);
+        m_Tree.buildTree(builder, sortedIndices, weights, 0, train.numInstances(), totalWeight, classProbs, 0);
 
         // Insert pruning data and perform reduced error pruning
         if (!m_NoPruning) {
@@ -193,6 +273,281 @@ public class RegressionDecisionTree extends Classifier
         }
     }
 
+    /**
+     * Splits the data into growing and pruning sets like {@link #buildClassifier(Instances)} does and sorts growing
+     * instances by every attribute, and bins them for histogram split finding. The result depends only on the
+     * attribute values, weights and on which targets are missing, so it can be shared by all trees with the same
+     * number of bins built on the data.
+     *
+     * @param data    the data to train with
+     * @param targets class value of every instance, missing values are skipped
+     * @return presorted data
+     */
+    @Override
+    @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod"})
+    public PresortedInstances presort(final Instances data, final double[] targets) {
+        if (data.numAttributes() == 1 || !data.classAttribute().isNumeric()) {
+            return new PresortedInstances(data);
+        }
+
+        //noinspection UnsecureRandomNumberGeneration
+        final Random random = new Random(M_SEED);
+
+        // Same permutation as randomize(), trainCV() and testCV() give
+        final int[] rows = IntStream.range(0, data.numInstances())
+                .filter(i -> !Instance.isMissingValue(targets[i]))
+                .toArray();
+        if (!m_NoPruning && rows.length < M_NUM_FOLDS) {
+            throw new IllegalArgumentException("Can't have more folds than instances!");
+        }
+        shuffle(rows, random);
+
+        final int[] train;
+        final int[] prune;
+
+        if (m_NoPruning) {
+            train = rows;
+            prune = new int[0];
+        } else {
+            final int pruneSize = rows.length / M_NUM_FOLDS + (rows.length % M_NUM_FOLDS > 0 ? 1 : 0);
+            prune = Arrays.copyOfRange(rows, 0, pruneSize);
+            train = Arrays.copyOfRange(rows, pruneSize, rows.length);
+            shuffle(train, random);
+        }
+
+        // Create array of sorted indices and weights, indices refer to the whole data
+        final int[][] sortedIndices = new int[data.numAttributes()][0];
+        final double[][] weights = new double[data.numAttributes()][0];
+        final double[] vals = new double[train.length];
+
+        for (int j = 0; j < data.numAttributes(); j++) {
+            if (j != data.classIndex()) {
+                sortedIndices[j] = new int[train.length];
+                weights[j] = new double[train.length];
+                if (data.attribute(j).isNominal()) {
+                    // Putting indices of instances with missing values at the end
+                    int count = 0;
+                    for (int row : train) {
+                        if (!data.instance(row).isMissing(j)) {
+                            sortedIndices[j][count] = row;
+                            weights[j][count] = data.instance(row).weight();
+                            count++;
+                        }
+                    }
+                    for (int row : train) {
+                        if (data.instance(row).isMissing(j)) {
+                            sortedIndices[j][count] = row;
+                            weights[j][count] = data.instance(row).weight();
+                            count++;
+                        }
+                    }
+                } else {
+                    for (int i = 0; i < train.length; i++) {
+                        vals[i] = data.instance(train[i]).value(j);
+                    }
+                    final int[] order = Utils.sort(vals);
+                    for (int i = 0; i < train.length; i++) {
+                        sortedIndices[j][i] = train[order[i]];
+                        weights[j][i] = data.instance(train[order[i]]).weight();
+                    }
+                }
+            }
+        }
+
+        if (m_NumBins == 0) {
+            return new PresortedInstances(data, train, prune, sortedIndices, weights, null, null, null);
+        }
+
+        // Bin every instance, not only growing ones
+        final int[][] bins = new int[data.numAttributes()][];
+        final int[] missingBin = new int[data.numAttributes()];
+        final double[][] cuts = new double[data.numAttributes()][];
+
+        for (int j = 0; j < data.numAttributes(); j++) {
+            if (j != data.classIndex()) {
+                if (data.attribute(j).isNominal()) {
+                    missingBin[j] = data.attribute(j).numValues();
+                } else {
+                    cuts[j] = quantileCuts(data, sortedIndices[j], j, m_NumBins);
+                    missingBin[j] = cuts[j].length + 1;
+                }
+
+                bins[j] = new int[data.numInstances()];
+                for (int row = 0; row < data.numInstances(); row++) {
+                    final Instance inst = data.instance(row);
+                    if (inst.isMissing(j)) {
+                        bins[j][row] = missingBin[j];
+                    } else if (cuts[j] == null) {
+                        //noinspection NumericCastThatLosesPrecision
+                        bins[j][row] = (int) inst.value(j);
+                    } else {
+                        final int index = Arrays.binarySearch(cuts[j], inst.value(j));
+                        bins[j][row] = index >= 0 ? index + 1 : -index - 1;
+                    }
+                }
+            }
+        }
+
+        return new PresortedInstances(data, train, prune, sortedIndices, weights, bins, missingBin, cuts);
+    }
+
+    /**
+     * Computes boundaries of at most <tt>numBins</tt> bins of a numeric attribute: between every two distinct values
+     * if there are few of them, otherwise so that bins hold about the same number of growing instances. A boundary is
+     * the midpoint of the neighbouring values, like split points of exact split finding.
+     *
+     * @param data    the data
+     * @param sorted  growing instances sorted by the attribute, missing values last
+     * @param att     the attribute index
+     * @param numBins the maximum number of bins
+     * @return increasing boundaries
+     */
+    private static double[] quantileCuts(final Instances data, final int[] sorted, final int att, final int numBins) {
+        int count = 0;
+        int distinct = 0;
+        while (count < sorted.length && !data.instance(sorted[count]).isMissing(att)) {
+            if (count == 0 || data.instance(sorted[count]).value(att) > data.instance(sorted[count - 1]).value(att)) {
+                distinct++;
+            }
+            count++;
+        }
+
+        final double[] cuts = new double[Math.max(Math.min(distinct, numBins) - 1, 0)];
+        int numCuts = 0;
+
+        for (int i = 0; i + 1 < count && numCuts < cuts.length; i++) {
+            final double value = data.instance(sorted[i]).value(att);
+            final double next = data.instance(sorted[i + 1]).value(att);
+
+            //noinspection NumericCastThatLosesPrecision
+            if (next > value && (distinct <= numBins || i + 1 >= (long) (numCuts + 1) * count / numBins)) {
+                //noinspection MagicNumber
+                double cut = (value + next) / 2.0;
+
+                // Check for numeric precision problems
+                if (cut <= value) {
+                    cut = next;
+                }
+                cuts[numCuts++] = cut;
+            }
+        }
+
+        return Arrays.copyOf(cuts, numCuts);
+    }
+
+    /**
+     * Builds regression tree on presorted data with class values taken from <tt>targets</tt>, which lets boosting
+     * keep residuals in an array instead of copying the data every round. Neither the data nor its index is modified.
+     * <p>
+     * Leaf reached by every training instance is remembered while growing and pruning, so predictions for them don't
+     * need another pass through the tree. Only instances which were split up by missing values, and ones with
+     * missing target, are classified again.
+     *
+     * @param presorted the data to train with, see {@link #presort(Instances, double[])}
+     * @param targets   class value of every instance, missing at the same instances as when presorting
+     * @return prediction for every instance of the data
+     * @throws Exception if building fails
+     */
+    @Override
+    @SuppressWarnings("ProhibitedExceptionDeclared")
+    public double[] buildWithPredictions(final PresortedInstances presorted, final double[] targets)
+            throws Exception {
+        final Instances data = presorted.data;
+        final double[] predictions = new double[data.numInstances()];
+
+        if (!presorted.isPresorted()) {
+            final Instances copy = new Instances(data);
+            for (int i = 0; i < copy.numInstances(); i++) {
+                copy.instance(i).setClassValue(targets[i]);
+            }
+            buildClassifier(copy);
+            for (int i = 0; i < copy.numInstances(); i++) {
+                predictions[i] = classifyInstance(copy.instance(i));
+            }
+            return predictions;
+        }
+
+        //noinspection AssignmentToNull
+        m_zeroR = null;
+
+        // Compute initial mean
+        final double[] classProbs = new double[1];
+        double totalWeight = 0, totalSumSquared = 0;
+
+        for (int row : presorted.train) {
+            final double weight = data.instance(row).weight();
+            classProbs[0] += targets[row] * weight;
+            totalSumSquared += targets[row] * targets[row] * weight;
+            totalWeight += weight;
+        }
+
+        final double trainVariance = Tree.singleVariance(classProbs[0], totalSumSquared, totalWeight) / totalWeight;
+        classProbs[0] /= totalWeight;
+
+        // Build tree on copies of the lists of instances, it partitions them in place
+        final Tree[] leaves = new Tree[data.numInstances()];
+        final TreeBuilder builder = new TreeBuilder(data, targets, new Instances(data, 0), M_MIN_NUM,
+                M_MIN_VARIANCE_PROP * trainVariance, M_MAX_DEPTH, m_ParallelThreshold, leaves);
+        m_Tree = new Tree();
+
+        if (presorted.isBinned()) {
+            final int[] rows = presorted.train.clone();
+            final double[] rowWeights = new double[rows.length];
+            for (int i = 0; i < rowWeights.length; i++) {
+                rowWeights[i] = data.instance(rows[i]).weight();
+            }
+            final Histogram histogram = new Histogram(presorted, rows, rowWeights, 0, rows.length, targets);
+
+            m_Tree.buildHistogramTree(builder, presorted, rows, rowWeights, 0, rows.length, histogram, totalWeight,
+                    classProbs, 0);
+        } else {
+            final int[][] sortedIndices = new int[data.numAttributes()][];
+            final double[][] weights = new double[data.numAttributes()][];
+            for (int j = 0; j < data.numAttributes(); j++) {
+                if (j != data.classIndex()) {
+                    sortedIndices[j] = presorted.sortedIndices[j].clone();
+                    weights[j] = presorted.weights[j].clone();
+                }
+            }
+
+            m_Tree.buildTree(builder, sortedIndices, weights, 0, presorted.train.length, totalWeight, classProbs, 0);
+        }
+
+        final Map<Tree, Tree[]> successors = new IdentityHashMap<>();
+        m_Tree.collectSuccessors(successors);
+
+        // Insert pruning data and perform reduced error pruning
+        if (!m_NoPruning) {
+            for (int row : presorted.prune) {
+                m_Tree.insertHoldOutInstance(data.instance(row), targets[row], data.instance(row).weight(), m_Tree,
+                        row, leaves);
+            }
+            m_Tree.reducedErrorPrune();
+            m_Tree.backfitHoldOutSet();
+        }
+
+        final Map<Tree, Double> values = new IdentityHashMap<>();
+        m_Tree.leafValues(successors, Double.NaN, null, values);
+
+        for (int i = 0; i < predictions.length; i++) {
+            predictions[i] = leaves[i] == null || leaves[i] == SPLIT_INSTANCE ?
+                    classifyInstance(data.instance(i)) :
+                    values.get(leaves[i]);
+        }
+
+        return predictions;
+    }
+
+    // same swaps as Instances.randomize()
+    private static void shuffle(final int[] rows, final Random random) {
+        for (int j = rows.length - 1; j > 0; j--) {
+            final int k = random.nextInt(j + 1);
+            final int row = rows[j];
+            rows[j] = rows[k];
+            rows[k] = row;
+        }
+    }
+
     /**
      * Computes class distribution of an instance using the tree.
      *
@@ -244,6 +599,219 @@ public class RegressionDecisionTree extends Classifier
         return map;
     }
 
+    /**
+     * Sums of weighted targets, of their squares, of weights, and numbers of instances in every bin of every
+     * attribute. Counts are exact, so they tell empty bins apart after subtraction.
+     */
+    @SuppressWarnings("WeakerAccess")
+    protected static final class Histogram {
+        final double[][] sums;
+        final double[][] sumSquared;
+        final double[][] weights;
+        final int[][] counts;
+
+        /**
+         * Computes histogram of the instances.
+         *
+         * @param presorted  the binned data
+         * @param rows       the instances
+         * @param rowWeights the weights of the instances
+         * @param start      the first instance in <tt>rows</tt>
+         * @param end        the end of instances in <tt>rows</tt>
+         * @param targets    the class values of the data
+         */
+        Histogram(
+                final PresortedInstances presorted,
+                final int[] rows,
+                final double[] rowWeights,
+                final int start,
+                final int end,
+                final double[] targets) {
+            final int numAttributes = presorted.data.numAttributes();
+            sums = new double[numAttributes][];
+            sumSquared = new double[numAttributes][];
+            weights = new double[numAttributes][];
+            counts = new int[numAttributes][];
+
+            for (int att = 0; att < numAttributes; att++) {
+                if (presorted.bins[att] == null) {
+                    continue;
+                }
+
+                final int numBins = presorted.missingBin[att] + 1;
+                sums[att] = new double[numBins];
+                sumSquared[att] = new double[numBins];
+                weights[att] = new double[numBins];
+                counts[att] = new int[numBins];
+
+                final int[] bins = presorted.bins[att];
+                for (int i = start; i < end; i++) {
+                    final int bin = bins[rows[i]];
+                    final double target = targets[rows[i]];
+                    sums[att][bin] += target * rowWeights[i];
+                    sumSquared[att][bin] += target * target * rowWeights[i];
+                    weights[att][bin] += rowWeights[i];
+                    counts[att][bin]++;
+                }
+            }
+        }
+
+        /**
+         * Removes instances of another histogram from this one, which turns histogram of a node into histogram of
+         * its remaining successors.
+         *
+         * @param other histogram of a part of the instances
+         */
+        void subtract(final Histogram other) {
+            for (int att = 0; att < sums.length; att++) {
+                if (sums[att] == null) {
+                    continue;
+                }
+
+                for (int bin = 0; bin < sums[att].length; bin++) {
+                    sums[att][bin] -= other.sums[att][bin];
+                    sumSquared[att][bin] -= other.sumSquared[att][bin];
+                    weights[att][bin] -= other.weights[att][bin];
+                    counts[att][bin] -= other.counts[att][bin];
+                }
+            }
+        }
+    }
+
+    /**
+     * Settings and data of growing a tree, with scratch space for splitting nodes. Every node owns a segment of lists
+     * of instances and partitions it between its successors in place, so growing allocates the lists once instead of
+     * new subset arrays at every node.
+     */
+    @SuppressWarnings({"WeakerAccess", "NumericCastThatLosesPrecision"})
+    protected static final class TreeBuilder {
+        final Instances data;
+        final double[] targets;
+        final Instances header;
+        final double minNum;
+        final double minVariance;
+        final int maxDepth;
+        final int parallelThreshold;
+        final Tree[] leaves;
+
+        /**
+         * Branch of every instance of the node being partitioned.
+         */
+        private final int[] branches;
+        private final int[] tmpIndices;
+        private final double[] tmpWeights;
+
+        /**
+         * @param data              the data to work with
+         * @param targets           the class values of the data
+         * @param header            the header of the data
+         * @param minNum            the minimum number of instances in a leaf
+         * @param minVariance
+         * @param maxDepth          the maximum allowed depth of the tree
+         * @param parallelThreshold the minimum number of instances for evaluating attributes in parallel
+         * @param leaves            leaf reached by every instance, filled in if not <tt>null</tt>
+         */
+        @SuppressWarnings("MethodWithTooManyParameters")
+        TreeBuilder(
+                final Instances data,
+                final double[] targets,
+                final Instances header,
+                final double minNum,
+                final double minVariance,
+                final int maxDepth,
+                final int parallelThreshold,
+                final Tree[] leaves) {
+            this.data = data;
+            this.targets = targets;
+            this.header = header;
+            this.minNum = minNum;
+            this.minVariance = minVariance;
+            this.maxDepth = maxDepth;
+            this.parallelThreshold = parallelThreshold;
+            this.leaves = leaves;
+
+            branches = new int[data.numInstances()];
+            tmpIndices = new int[data.numInstances()];
+            tmpWeights = new double[data.numInstances()];
+        }
+
+        /**
+         * Partitions a segment of the node between its successors, keeping the order of instances in every list.
+         *
+         * @param node    the split node
+         * @param indices lists of the instances, <tt>null</tt> ones are skipped
+         * @param weights the weights of the instances in the lists
+         * @param start   the first instance of the node in the lists
+         * @param end     the end of instances of the node in the lists
+         * @return bounds of segments of the successors, successor <tt>k</tt> gets instances from <tt>bounds[k]</tt> to
+         * <tt>bounds[k + 1]</tt>; <tt>null</tt> if instances with missing value go down several branches, nothing is
+         * moved then
+         */
+        int[] partition(
+                final Tree node,
+                final int[][] indices,
+                final double[][] weights,
+                final int start,
+                final int end) {
+            final int att = node.m_Attribute;
+            final int numBranches = node.m_Successors.length;
+
+            // Instance with missing value goes where the weight went, if it all went down one branch its proportion
+            // is exactly 1 and the weight stays as it is
+            int missingBranch = -1, positive = 0;
+            for (int k = 0; k < numBranches; k++) {
+                if (node.m_Prop[k] > 0) {
+                    missingBranch = k;
+                    positive++;
+                }
+            }
+
+            int list = 0;
+            while (indices[list] == null) {
+                list++;
+            }
+
+            final int[] bounds = new int[numBranches + 1];
+            for (int j = start; j < end; j++) {
+                final int row = indices[list][j];
+                final Instance inst = data.instance(row);
+                if (inst.isMissing(att)) {
+                    if (positive > 1) {
+                        return null;
+                    }
+                    branches[row] = missingBranch;
+                } else {
+                    branches[row] = data.attribute(att).isNominal() ?
+                            (int) inst.value(att) :
+                            inst.value(att) < node.m_SplitPoint ? 0 : 1;
+                }
+                bounds[branches[row] + 1]++;
+            }
+            bounds[0] = start;
+            for (int k = 0; k < numBranches; k++) {
+                bounds[k + 1] += bounds[k];
+            }
+
+            final int[] next = new int[numBranches];
+            for (int i = list; i < indices.length; i++) {
+                if (indices[i] == null) {
+                    continue;
+                }
+
+                System.arraycopy(bounds, 0, next, 0, numBranches);
+                for (int j = start; j < end; j++) {
+                    final int position = next[branches[indices[i][j]]]++ - start;
+                    tmpIndices[position] = indices[i][j];
+                    tmpWeights[position] = weights[i][j];
+                }
+                System.arraycopy(tmpIndices, 0, indices[i], start, end - start);
+                System.arraycopy(tmpWeights, 0, weights[i], start, end - start);
+            }
+
+            return bounds;
+        }
+    }
+
     /**
      * An inner class for building and storing the tree structure
      */
@@ -307,20 +875,27 @@ public class RegressionDecisionTree extends Classifier
          * @param att           the attribute index
          * @param sortedIndices the sorted indices of the instances
          * @param weights       the weights of the instances
+         * @param start         the first instance of the node in <tt>sortedIndices</tt>
+         * @param end           the end of instances of the node in <tt>sortedIndices</tt>
          * @param subsetWeights the weights of the subset
          * @param data          the data to work with
+         * @param targets       the class values of the instances
          * @return the split point
          * @throws Exception if computation fails
          */
-        @SuppressWarnings({"NumericCastThatLosesPrecision", "OverlyComplexMethod", "OverlyLongMethod"})
+        @SuppressWarnings({"NumericCastThatLosesPrecision", "OverlyComplexMethod", "OverlyLongMethod",
+                "MethodWithTooManyParameters"})
         protected static double distribution(
                 final double[][] props,
                 final double[][][] dists,
                 final int att,
                 final int[] sortedIndices,
                 final double[] weights,
+                final int start,
+                final int end,
                 final double[][] subsetWeights,
-                final Instances data) {
+                final Instances data,
+                final double[] targets) {
 
             double splitPoint = Double.NaN;
             final Attribute attribute = data.attribute(att);
@@ -330,12 +905,13 @@ public class RegressionDecisionTree extends Classifier
             if (attribute.isNominal()) {
                 // For nominal attributes
                 dist = new double[attribute.numValues()][data.numClasses()];
-                for (i = 0; i < sortedIndices.length; i++) {
+                for (i = start; i < end; i++) {
                     final Instance inst = data.instance(sortedIndices[i]);
+                    final double target = targets[sortedIndices[i]];
                     if (inst.isMissing(att)) {
                         break;
                     }
-                    dist[(int) inst.value(att)][(int) inst.classValue()] += weights[i];
+                    dist[(int) inst.value(att)][(int) target] += weights[i];
                 }
             } else {
 
@@ -344,21 +920,23 @@ public class RegressionDecisionTree extends Classifier
                 dist = new double[2][data.numClasses()];
 
                 // Move all instances into second subset
-                for (int j = 0; j < sortedIndices.length; j++) {
+                for (int j = start; j < end; j++) {
                     final Instance inst = data.instance(sortedIndices[j]);
+                    final double target = targets[sortedIndices[j]];
                     if (inst.isMissing(att)) {
                         break;
                     }
-                    currDist[1][(int) inst.classValue()] += weights[j];
+                    currDist[1][(int) target] += weights[j];
                 }
                 final double priorVal = priorVal(currDist);
                 System.arraycopy(currDist[1], 0, dist[1], 0, dist[1].length);
 
                 // Try all possible split points
-                double currSplit = data.instance(sortedIndices[0]).value(att);
+                double currSplit = data.instance(sortedIndices[start]).value(att);
                 double bestVal = -Double.MAX_VALUE;
-                for (i = 0; i < sortedIndices.length; i++) {
+                for (i = start; i < end; i++) {
                     final Instance inst = data.instance(sortedIndices[i]);
+                    final double target = targets[sortedIndices[i]];
                     if (inst.isMissing(att)) {
                         break;
                     }
@@ -381,8 +959,8 @@ public class RegressionDecisionTree extends Classifier
                         }
                     }
                     currSplit = inst.value(att);
-                    currDist[0][(int) inst.classValue()] += weights[i];
-                    currDist[1][(int) inst.classValue()] -= weights[i];
+                    currDist[0][(int) target] += weights[i];
+                    currDist[1][(int) target] -= weights[i];
                 }
             }
 
@@ -400,10 +978,10 @@ public class RegressionDecisionTree extends Classifier
             }
 
             // Distribute counts
-            while (i < sortedIndices.length) {
-                final Instance inst = data.instance(sortedIndices[i]);
+            while (i < end) {
+                final double target = targets[sortedIndices[i]];
                 for (int j = 0; j < dist.length; j++) {
-                    dist[j][(int) inst.classValue()] += props[att][j] * weights[i];
+                    dist[j][(int) target] += props[att][j] * weights[i];
                 }
                 i++;
             }
@@ -427,21 +1005,27 @@ public class RegressionDecisionTree extends Classifier
          * @param att           the attribute index
          * @param sortedIndices the sorted indices of the instances
          * @param weights       the weights of the instances
+         * @param start         the first instance of the node in <tt>sortedIndices</tt>
+         * @param end           the end of instances of the node in <tt>sortedIndices</tt>
          * @param subsetWeights the weights of the subset
          * @param data          the data to work with
+         * @param targets       the class values of the instances
          * @param vals
          * @return the split point
          * @throws Exception if computation fails
          */
-        @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod"})
+        @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod", "MethodWithTooManyParameters"})
         protected static double numericDistribution(
                 final double[][] props,
                 final double[][][] dists,
                 final int att,
                 final int[] sortedIndices,
                 final double[] weights,
+                final int start,
+                final int end,
                 final double[][] subsetWeights,
                 final Instances data,
+                final double[] targets,
                 final double[] vals) {
 
             double splitPoint = Double.NaN;
@@ -459,16 +1043,17 @@ public class RegressionDecisionTree extends Classifier
                 sums = new double[attribute.numValues()];
                 sumSquared = new double[attribute.numValues()];
                 sumOfWeights = new double[attribute.numValues()];
-                for (i = 0; i < sortedIndices.length; i++) {
+                for (i = start; i < end; i++) {
                     final Instance inst = data.instance(sortedIndices[i]);
+                    final double target = targets[sortedIndices[i]];
                     if (inst.isMissing(att)) {
                         break;
                     }
                     //noinspection NumericCastThatLosesPrecision
                     final int attVal = (int) inst.value(att);
-                    sums[attVal] += inst.classValue() * weights[i];
+                    sums[attVal] += target * weights[i];
                     sumSquared[attVal] +=
-                            inst.classValue() * inst.classValue() * weights[i];
+                            target * target * weights[i];
                     sumOfWeights[attVal] += weights[i];
                 }
                 totalSum = Utils.sum(sums);
@@ -485,14 +1070,15 @@ public class RegressionDecisionTree extends Classifier
                 final double[] currSumOfWeights = new double[2];
 
                 // Move all instances into second subset
-                for (int j = 0; j < sortedIndices.length; j++) {
+                for (int j = start; j < end; j++) {
                     final Instance inst = data.instance(sortedIndices[j]);
+                    final double target = targets[sortedIndices[j]];
                     if (inst.isMissing(att)) {
                         break;
                     }
-                    currSums[1] += inst.classValue() * weights[j];
+                    currSums[1] += target * weights[j];
                     currSumSquared[1] +=
-                            inst.classValue() * inst.classValue() * weights[j];
+                            target * target * weights[j];
                     currSumOfWeights[1] += weights[j];
 
                 }
@@ -505,10 +1091,11 @@ public class RegressionDecisionTree extends Classifier
                 sumOfWeights[1] = currSumOfWeights[1];
 
                 // Try all possible split points
-                double currSplit = data.instance(sortedIndices[0]).value(att);
+                double currSplit = data.instance(sortedIndices[start]).value(att);
                 double bestVal = Double.MAX_VALUE;
-                for (i = 0; i < sortedIndices.length; i++) {
+                for (i = start; i < end; i++) {
                     final Instance inst = data.instance(sortedIndices[i]);
+                    final double target = targets[sortedIndices[i]];
                     if (inst.isMissing(att)) {
                         break;
                     }
@@ -534,8 +1121,8 @@ public class RegressionDecisionTree extends Classifier
 
                     currSplit = inst.value(att);
 
-                    final double classVal = inst.classValue() * weights[i];
-                    final double classValSquared = inst.classValue() * classVal;
+                    final double classVal = target * weights[i];
+                    final double classValSquared = target * classVal;
 
                     currSums[0] += classVal;
                     currSumSquared[0] += classValSquared;
@@ -560,17 +1147,17 @@ public class RegressionDecisionTree extends Classifier
 
 
             // Distribute counts for missing values
-            while (i < sortedIndices.length) {
-                final Instance inst = data.instance(sortedIndices[i]);
+            while (i < end) {
+                final double target = targets[sortedIndices[i]];
                 for (int j = 0; j < sums.length; j++) {
-                    sums[j] += props[att][j] * inst.classValue() * weights[i];
-                    sumSquared[j] += props[att][j] * inst.classValue() *
-                            inst.classValue() * weights[i];
+                    sums[j] += props[att][j] * target * weights[i];
+                    sumSquared[j] += props[att][j] * target *
+                            target * weights[i];
                     sumOfWeights[j] += props[att][j] * weights[i];
                 }
-                totalSum += inst.classValue() * weights[i];
+                totalSum += target * weights[i];
                 totalSumSquared +=
-                        inst.classValue() * inst.classValue() * weights[i];
+                        target * target * weights[i];
                 totalSumOfWeights += weights[i];
                 i++;
             }
@@ -593,6 +1180,151 @@ public class RegressionDecisionTree extends Classifier
             return splitPoint;
         }
 
+        /**
+         * Computes distribution for an attribute from histogram of a node. Split points are only tried between
+         * non-empty bins of numeric attributes.
+         *
+         * @param props
+         * @param dists
+         * @param att           the attribute index
+         * @param histogram     the histogram of the node
+         * @param cuts          the boundaries between bins of a numeric attribute
+         * @param subsetWeights the weights of the subset
+         * @param data          the data to work with
+         * @param vals
+         * @return the split point
+         */
+        @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod"})
+        protected static double histogramDistribution(
+                final double[][] props,
+                final double[][][] dists,
+                final int att,
+                final Histogram histogram,
+                final double[] cuts,
+                final double[][] subsetWeights,
+                final Instances data,
+                final double[] vals) {
+
+            double splitPoint = Double.NaN;
+            final double[] binSums = histogram.sums[att];
+            final double[] binSumSquared = histogram.sumSquared[att];
+            final double[] binWeights = histogram.weights[att];
+            final int[] binCounts = histogram.counts[att];
+            final int missing = binSums.length - 1;
+            final double[] sums;
+            final double[] sumSquared;
+            final double[] sumOfWeights;
+            double totalSum, totalSumSquared, totalSumOfWeights;
+
+            if (data.attribute(att).isNominal()) {
+
+                // For nominal attributes bins are values
+                sums = Arrays.copyOf(binSums, missing);
+                sumSquared = Arrays.copyOf(binSumSquared, missing);
+                sumOfWeights = Arrays.copyOf(binWeights, missing);
+                totalSum = Utils.sum(sums);
+                totalSumSquared = Utils.sum(sumSquared);
+                totalSumOfWeights = Utils.sum(sumOfWeights);
+            } else {
+
+                // For numeric attributes
+                sums = new double[2];
+                sumSquared = new double[2];
+                sumOfWeights = new double[2];
+                final double[] currSums = new double[2];
+                final double[] currSumSquared = new double[2];
+                final double[] currSumOfWeights = new double[2];
+                int totalCount = 0;
+
+                // Move all bins into second subset
+                for (int bin = 0; bin < missing; bin++) {
+                    currSums[1] += binSums[bin];
+                    currSumSquared[1] += binSumSquared[bin];
+                    currSumOfWeights[1] += binWeights[bin];
+                    totalCount += binCounts[bin];
+                }
+                totalSum = currSums[1];
+                totalSumSquared = currSumSquared[1];
+                totalSumOfWeights = currSumOfWeights[1];
+
+                sums[1] = currSums[1];
+                sumSquared[1] = currSumSquared[1];
+                sumOfWeights[1] = currSumOfWeights[1];
+
+                // Try boundaries after every non-empty bin with instances left on the right
+                double bestVal = Double.MAX_VALUE;
+                int count = 0;
+                for (int bin = 0; bin < missing - 1 && count < totalCount; bin++) {
+                    if (binCounts[bin] == 0) {
+                        continue;
+                    }
+
+                    currSums[0] += binSums[bin];
+                    currSumSquared[0] += binSumSquared[bin];
+                    currSumOfWeights[0] += binWeights[bin];
+
+                    currSums[1] -= binSums[bin];
+                    currSumSquared[1] -= binSumSquared[bin];
+                    currSumOfWeights[1] -= binWeights[bin];
+                    count += binCounts[bin];
+
+                    if (count < totalCount) {
+                        final double currVal = variance(currSums, currSumSquared, currSumOfWeights);
+                        if (currVal < bestVal) {
+                            bestVal = currVal;
+                            splitPoint = cuts[bin];
+
+                            for (int j = 0; j < 2; j++) {
+                                sums[j] = currSums[j];
+                                sumSquared[j] = currSumSquared[j];
+                                sumOfWeights[j] = currSumOfWeights[j];
+                            }
+                        }
+                    }
+                }
+            }
+
+            // Compute weights
+            props[att] = new double[sums.length];
+            System.arraycopy(sumOfWeights, 0, props[att], 0, props[att].length);
+            if (Utils.sum(props[att]) > 0) {
+                Utils.normalize(props[att]);
+            } else {
+                for (int k = 0; k < props[att].length; k++) {
+                    props[att][k] = 1.0 / props[att].length;
+                }
+            }
+
+            // Distribute counts for missing values
+            if (binCounts[missing] > 0) {
+                for (int j = 0; j < sums.length; j++) {
+                    sums[j] += props[att][j] * binSums[missing];
+                    sumSquared[j] += props[att][j] * binSumSquared[missing];
+                    sumOfWeights[j] += props[att][j] * binWeights[missing];
+                }
+                totalSum += binSums[missing];
+                totalSumSquared += binSumSquared[missing];
+                totalSumOfWeights += binWeights[missing];
+            }
+
+            // Compute final distribution
+            final double[][] dist = new double[sums.length][data.numClasses()];
+            for (int j = 0; j < sums.length; j++) {
+                dist[j][0] = sumOfWeights[j] > 0 ? sums[j] / sumOfWeights[j] : totalSum / totalSumOfWeights;
+            }
+
+            // Compute variance gain
+            final double priorVar = singleVariance(totalSum, totalSumSquared, totalSumOfWeights);
+            final double variable = variance(sums, sumSquared, sumOfWeights);
+            final double gain = priorVar - variable;
+
+            // Return distribution and split point
+            subsetWeights[att] = sumOfWeights;
+            dists[att] = dist;
+            vals[att] = gain;
+            return splitPoint;
+        }
+
         /**
          * Computes variance for subsets.
          *
@@ -925,36 +1657,37 @@ public class RegressionDecisionTree extends Classifier
         }
 
         /**
-         * Recursively generates a tree.
+         * Recursively generates a tree on a segment of the lists of instances. Successors get consecutive parts of the
+         * segment, unless instances with missing value go down several branches.
          *
+         * @param builder       the settings and data of growing
          * @param sortedIndices the sorted indices of the instances
          * @param weights       the weights of the instances
-         * @param data          the data to work with
+         * @param start         the first instance of the node in the lists
+         * @param end           the end of instances of the node in the lists
          * @param totalWeight
          * @param classProbs    the class probabilities
-         * @param header        the header of the data
-         * @param minNum        the minimum number of instances in a leaf
-         * @param minVariance
          * @param depth         the current depth of the tree
-         * @param maxDepth      the maximum allowed depth of the tree
          * @throws Exception if generation fails
          */
-        @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod", "ConstantConditions", "PointlessBooleanExpression"})
+        @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod", "ConstantConditions",
+                "PointlessBooleanExpression", "MethodWithTooManyParameters"})
         protected void buildTree(
-                final int[][][] sortedIndices,
-                final double[][][] weights,
-                final Instances data,
+                final TreeBuilder builder,
+                final int[][] sortedIndices,
+                final double[][] weights,
+                final int start,
+                final int end,
                 final double totalWeight,
                 final double[] classProbs,
-                final Instances header,
-                final double minNum,
-                final double minVariance,
-                final int depth,
-                final int maxDepth) {
+                final int depth) {
+
+            final Instances data = builder.data;
+            final double[] targets = builder.targets;
 
             // Store structure of dataset, set minimum number of instances
             // and make space for potential info from pruning data
-            m_Info = header;
+            m_Info = builder.header;
             m_HoldOutDist = data.classAttribute().isNumeric() ? new double[2] : new double[data.numClasses()];
 
             // Make leaf if there are no training instances
@@ -962,11 +1695,9 @@ public class RegressionDecisionTree extends Classifier
             if (data.classIndex() == 0) {
                 helpIndex = 1;
             }
-            if (sortedIndices[0][helpIndex].length == 0) {
+            if (start == end) {
                 m_Distribution = data.classAttribute().isNumeric() ? new double[2] : new double[data.numClasses()];
                 m_ClassProbs = null;
-                sortedIndices[0] = null;
-                weights[0] = null;
                 return;
             }
 
@@ -975,12 +1706,12 @@ public class RegressionDecisionTree extends Classifier
 
                 // Compute prior variance
                 double totalSum = 0, totalSumSquared = 0, totalSumOfWeights = 0;
-                for (int i = 0; i < sortedIndices[0][helpIndex].length; i++) {
-                    final Instance inst = data.instance(sortedIndices[0][helpIndex][i]);
-                    totalSum += inst.classValue() * weights[0][helpIndex][i];
+                for (int i = start; i < end; i++) {
+                    final double target = targets[sortedIndices[helpIndex][i]];
+                    totalSum += target * weights[helpIndex][i];
                     totalSumSquared +=
-                            inst.classValue() * inst.classValue() * weights[0][helpIndex][i];
-                    totalSumOfWeights += weights[0][helpIndex][i];
+                            target * target * weights[helpIndex][i];
+                    totalSumOfWeights += weights[helpIndex][i];
                 }
                 priorVar = singleVariance(totalSum, totalSumSquared,
                         totalSumOfWeights);
@@ -991,22 +1722,21 @@ public class RegressionDecisionTree extends Classifier
             m_ClassProbs = new double[classProbs.length];
             System.arraycopy(classProbs, 0, m_ClassProbs, 0, classProbs.length);
             //noinspection OverlyComplexBooleanExpression
-            if (totalWeight < 2 * minNum ||
+            if (totalWeight < 2 * builder.minNum ||
                     // Nominal case
                     data.classAttribute().isNominal() &&
                             Utils.eq(m_ClassProbs[Utils.maxIndex(m_ClassProbs)],
                                     Utils.sum(m_ClassProbs)) ||
                     // Numeric case
                     data.classAttribute().isNumeric() &&
-                            priorVar / totalWeight < minVariance ||
+                            priorVar / totalWeight < builder.minVariance ||
                     // Check tree depth
-                    M_MAX_DEPTH >= 0 && depth >= maxDepth) {
+                    M_MAX_DEPTH >= 0 && depth >= builder.maxDepth) {
 
                 // Make leaf
                 m_Attribute = -1;
                 distribution(data, totalWeight, priorVar);
-                sortedIndices[0] = null;
-                weights[0] = null;
+                recordLeaf(sortedIndices[helpIndex], start, end, builder.leaves);
                 return;
             }
 
@@ -1017,26 +1747,175 @@ public class RegressionDecisionTree extends Classifier
             final double[][] props = new double[data.numAttributes()][0];
             final double[][] totalSubsetWeights = new double[data.numAttributes()][0];
             final double[] splits = new double[data.numAttributes()];
-            if (data.classAttribute().isNominal()) {
+            final boolean nominal = data.classAttribute().isNominal();
 
-                // Nominal case
-                for (int i = 0; i < data.numAttributes(); i++) {
-                    if (i != data.classIndex()) {
-                        splits[i] = distribution(props, dists, i, sortedIndices[0][i],
-                                weights[0][i], totalSubsetWeights, data);
-                        vals[i] = gain(dists[i], priorVal(dists[i]));
+            // Attributes are independent and only fill their own slots, so large nodes evaluate them in parallel;
+            // the best one is still chosen sequentially below
+            IntStream attributes = IntStream.range(0, data.numAttributes()).filter(i -> i != data.classIndex());
+            if (end - start >= builder.parallelThreshold) {
+                attributes = attributes.parallel();
+            }
+
+            attributes.forEach(i -> {
+                if (nominal) {
+                    splits[i] = distribution(props, dists, i, sortedIndices[i],
+                            weights[i], start, end, totalSubsetWeights, data, targets);
+                    vals[i] = gain(dists[i], priorVal(dists[i]));
+                } else {
+                    splits[i] =
+                            numericDistribution(props, dists, i, sortedIndices[i],
+                                    weights[i], start, end, totalSubsetWeights, data,
+                                    targets, vals);
+                }
+            });
+
+            // Find best attribute
+            m_Attribute = Utils.maxIndex(vals);
+            final int numAttVals = dists[m_Attribute].length;
+
+            // Check if there are at least two subsets with
+            // required minimum number of instances
+            int count = 0;
+            for (int i = 0; i < numAttVals; i++) {
+                if (totalSubsetWeights[m_Attribute][i] >= builder.minNum) {
+                    count++;
+                }
+                if (count > 1) {
+                    break;
+                }
+            }
+
+            // Any useful split found?
+            if (Utils.gr(vals[m_Attribute], 0) && count > 1) {
+                // Set split point, proportions, and temp arrays
+                m_SplitPoint = splits[m_Attribute];
+                m_Prop = props[m_Attribute];
+                final double[][] attSubsetDists = dists[m_Attribute];
+                final double[] attTotalSubsetWeights = totalSubsetWeights[m_Attribute];
+
+                m_Successors = new Tree[numAttVals];
+                for (int i = 0; i < numAttVals; i++) {
+                    m_Successors[i] = new Tree();
+                }
+
+                // Split data in place
+                final int[] bounds = builder.partition(this, sortedIndices, weights, start, end);
+
+                // Build successors
+                if (bounds != null) {
+                    for (int i = 0; i < numAttVals; i++) {
+                        m_Successors[i].buildTree(builder, sortedIndices, weights, bounds[i], bounds[i + 1],
+                                attTotalSubsetWeights[i], attSubsetDists[i], depth + 1);
+
+                        // Release as much memory as we can
+                        attSubsetDists[i] = null;
+                    }
+                } else {
+
+                    // Instances with missing value are split up, successors get lists of their own
+                    final int[][][] subsetIndices = new int[numAttVals][data.numAttributes()][];
+                    final double[][][] subsetWeights = new double[numAttVals][data.numAttributes()][];
+                    splitData(subsetIndices, subsetWeights, m_Attribute, m_SplitPoint,
+                            sortedIndices, weights, start, end, data);
+
+                    for (int i = 0; i < numAttVals; i++) {
+                        m_Successors[i].buildTree(builder, subsetIndices[i], subsetWeights[i], 0,
+                                subsetIndices[i][helpIndex].length, attTotalSubsetWeights[i], attSubsetDists[i],
+                                depth + 1);
+
+                        // Release as much memory as we can
+                        attSubsetDists[i] = null;
+                        subsetIndices[i] = null;
+                        subsetWeights[i] = null;
                     }
                 }
             } else {
 
-                // Numeric case
-                for (int i = 0; i < data.numAttributes(); i++) {
-                    if (i != data.classIndex()) {
-                        splits[i] =
-                                numericDistribution(props, dists, i, sortedIndices[0][i],
-                                        weights[0][i], totalSubsetWeights, data,
-                                        vals);
-                    }
+                // Make leaf
+                m_Attribute = -1;
+                recordLeaf(sortedIndices[helpIndex], start, end, builder.leaves);
+            }
+
+            // Normalize class counts
+            distribution(data, totalWeight, priorVar);
+        }
+
+        /**
+         * Recursively generates a tree for numeric class using histograms of binned attributes on a segment of the
+         * instances. Successors get consecutive parts of the segment, unless instances with missing value go down
+         * several branches.
+         *
+         * @param builder     the settings and data of growing
+         * @param presorted   the binned data
+         * @param rows        the instances
+         * @param rowWeights  the weights of the instances
+         * @param start       the first instance of the node in <tt>rows</tt>
+         * @param end         the end of instances of the node in <tt>rows</tt>
+         * @param histogram   the histogram of the instances, it's reused by a successor
+         * @param totalWeight
+         * @param classProbs  the mean of the node
+         * @param depth       the current depth of the tree
+         */
+        @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod", "ConstantConditions",
+                "PointlessBooleanExpression", "MethodWithTooManyParameters"})
+        protected void buildHistogramTree(
+                final TreeBuilder builder,
+                final PresortedInstances presorted,
+                final int[] rows,
+                final double[] rowWeights,
+                final int start,
+                final int end,
+                final Histogram histogram,
+                final double totalWeight,
+                final double[] classProbs,
+                final int depth) {
+
+            final Instances data = presorted.data;
+            final double[] targets = builder.targets;
+            m_Info = builder.header;
+            m_HoldOutDist = new double[2];
+
+            // Make leaf if there are no training instances
+            if (start == end) {
+                m_Distribution = new double[2];
+                m_ClassProbs = null;
+                return;
+            }
+
+            // Compute prior variance
+            double totalSum = 0, totalSumSquared = 0, totalSumOfWeights = 0;
+            for (int i = start; i < end; i++) {
+                final double target = targets[rows[i]];
+                totalSum += target * rowWeights[i];
+                totalSumSquared += target * target * rowWeights[i];
+                totalSumOfWeights += rowWeights[i];
+            }
+            final double priorVar = singleVariance(totalSum, totalSumSquared, totalSumOfWeights);
+
+            // Check if node doesn't contain enough instances, is pure
+            // or the maximum tree depth is reached
+            m_ClassProbs = classProbs.clone();
+            if (totalWeight < 2 * builder.minNum ||
+                    priorVar / totalWeight < builder.minVariance ||
+                    M_MAX_DEPTH >= 0 && depth >= builder.maxDepth) {
+
+                // Make leaf
+                m_Attribute = -1;
+                distribution(data, totalWeight, priorVar);
+                recordLeaf(rows, start, end, builder.leaves);
+                return;
+            }
+
+            // Compute distributions and variance gain for each attribute
+            final double[] vals = new double[data.numAttributes()];
+            final double[][][] dists = new double[data.numAttributes()][0][0];
+            final double[][] props = new double[data.numAttributes()][0];
+            final double[][] totalSubsetWeights = new double[data.numAttributes()][0];
+            final double[] splits = new double[data.numAttributes()];
+            for (int i = 0; i < data.numAttributes(); i++) {
+                if (i != data.classIndex()) {
+                    splits[i] = histogramDistribution(props, dists, i, histogram, presorted.cuts[i],
+                            totalSubsetWeights, data, vals);
                 }
             }
 
@@ -1048,7 +1927,7 @@ public class RegressionDecisionTree extends Classifier
             // required minimum number of instances
             int count = 0;
             for (int i = 0; i < numAttVals; i++) {
-                if (totalSubsetWeights[m_Attribute][i] >= minNum) {
+                if (totalSubsetWeights[m_Attribute][i] >= builder.minNum) {
                     count++;
                 }
                 if (count > 1) {
@@ -1064,41 +1943,108 @@ public class RegressionDecisionTree extends Classifier
                 final double[][] attSubsetDists = dists[m_Attribute];
                 final double[] attTotalSubsetWeights = totalSubsetWeights[m_Attribute];
 
-                // Split data
-                final int[][][][] subsetIndices = new int[numAttVals][1][data.numAttributes()][0];
-                final double[][][][] subsetWeights = new double[numAttVals][1][data.numAttributes()][0];
-                splitData(subsetIndices, subsetWeights, m_Attribute, m_SplitPoint,
-                        sortedIndices[0], weights[0], data);
+                m_Successors = new Tree[numAttVals];
+                for (int i = 0; i < numAttVals; i++) {
+                    m_Successors[i] = new Tree();
+                }
+
+                // Split instances in place, or into lists of their own if ones with missing value go everywhere with
+                // a part of their weight
+                final int[][] subsetRows = new int[numAttVals][];
+                final double[][] subsetWeights = new double[numAttVals][];
+                final int[] subsetStarts = new int[numAttVals];
+                final int[] subsetEnds = new int[numAttVals];
+                final int[] bounds = builder.partition(this, new int[][]{rows}, new double[][]{rowWeights}, start, end);
+
+                if (bounds != null) {
+                    for (int k = 0; k < numAttVals; k++) {
+                        subsetRows[k] = rows;
+                        subsetWeights[k] = rowWeights;
+                        subsetStarts[k] = bounds[k];
+                        subsetEnds[k] = bounds[k + 1];
+                    }
+                } else {
+                    for (int k = 0; k < numAttVals; k++) {
+                        subsetRows[k] = new int[end - start];
+                        subsetWeights[k] = new double[end - start];
+                    }
+                    for (int i = start; i < end; i++) {
+                        final Instance inst = data.instance(rows[i]);
+                        if (inst.isMissing(m_Attribute)) {
+                            for (int k = 0; k < numAttVals; k++) {
+                                if (m_Prop[k] > 0) {
+                                    subsetRows[k][subsetEnds[k]] = rows[i];
+                                    subsetWeights[k][subsetEnds[k]] = m_Prop[k] * rowWeights[i];
+                                    subsetEnds[k]++;
+                                }
+                            }
+                        } else {
+                            final int subset = data.attribute(m_Attribute).isNominal() ?
+                                    (int) inst.value(m_Attribute) :
+                                    inst.value(m_Attribute) < m_SplitPoint ? 0 : 1;
+                            subsetRows[subset][subsetEnds[subset]] = rows[i];
+                            subsetWeights[subset][subsetEnds[subset]] = rowWeights[i];
+                            subsetEnds[subset]++;
+                        }
+                    }
+                }
+
+                // Histograms of all subsets but the largest one are computed, it gets what remains of this one. Split
+                // up instances are counted in several subsets with a part of their weight, so subtraction would leave
+                // wrong counts and weights, and histograms of all subsets are computed then
+                int largest = bounds == null ? -1 : 0;
+                for (int k = 0; k < numAttVals && largest >= 0; k++) {
+                    if (subsetEnds[k] - subsetStarts[k] > subsetEnds[largest] - subsetStarts[largest]) {
+                        largest = k;
+                    }
+                }
 
-                // Release memory
-                sortedIndices[0] = null;
-                weights[0] = null;
+                final Histogram[] histograms = new Histogram[numAttVals];
+                for (int k = 0; k < numAttVals; k++) {
+                    if (k != largest) {
+                        histograms[k] = new Histogram(presorted, subsetRows[k], subsetWeights[k], subsetStarts[k],
+                                subsetEnds[k], targets);
+                        histogram.subtract(histograms[k]);
+                    }
+                }
+                if (largest >= 0) {
+                    histograms[largest] = histogram;
+                }
 
                 // Build successors
-                m_Successors = new Tree[numAttVals];
                 for (int i = 0; i < numAttVals; i++) {
-                    m_Successors[i] = new Tree();
-                    m_Successors[i].
-                            buildTree(subsetIndices[i], subsetWeights[i],
-                                    data, attTotalSubsetWeights[i],
-                                    attSubsetDists[i], header, minNum,
-                                    minVariance, depth + 1, maxDepth);
+                    m_Successors[i].buildHistogramTree(builder, presorted, subsetRows[i], subsetWeights[i],
+                            subsetStarts[i], subsetEnds[i], histograms[i], attTotalSubsetWeights[i],
+                            attSubsetDists[i], depth + 1);
 
                     // Release as much memory as we can
                     attSubsetDists[i] = null;
+                    histograms[i] = null;
+                    subsetRows[i] = null;
+                    subsetWeights[i] = null;
                 }
             } else {
 
                 // Make leaf
                 m_Attribute = -1;
-                sortedIndices[0] = null;
-                weights[0] = null;
+                recordLeaf(rows, start, end, builder.leaves);
             }
 
             // Normalize class counts
             distribution(data, totalWeight, priorVar);
         }
 
+        private void recordLeaf(final int[] indices, final int start, final int end, final Tree[] leaves) {
+            if (leaves == null) {
+                return;
+            }
+
+            // instance with missing value may reach several leaves
+            for (int i = start; i < end; i++) {
+                leaves[indices[i]] = leaves[indices[i]] == null || leaves[indices[i]] == this ? this : SPLIT_INSTANCE;
+            }
+        }
+
         private void distribution(
                 final Instances data,
                 final double totalWeight,
@@ -1123,16 +2069,20 @@ public class RegressionDecisionTree extends Classifier
          * @param splitPoint    the split point for numeric attributes
          * @param sortedIndices the sorted indices of the whole set
          * @param weights       the weights of the whole set
+         * @param start         the first instance of the set in <tt>sortedIndices</tt>
+         * @param end           the end of instances of the set in <tt>sortedIndices</tt>
          * @param data          the data to work with
          * @throws Exception if something goes wrong
          */
-        @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod"})
-        protected void splitData(final int[][][][] subsetIndices,
-                                 final double[][][][] subsetWeights,
+        @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod", "MethodWithTooManyParameters"})
+        protected void splitData(final int[][][] subsetIndices,
+                                 final double[][][] subsetWeights,
                                  final int att,
                                  final double splitPoint,
                                  final int[][] sortedIndices,
                                  final double[][] weights,
+                                 final int start,
+                                 final int end,
                                  final Instances data) {
 
             // For each attribute
@@ -1145,10 +2095,10 @@ public class RegressionDecisionTree extends Classifier
                         // For nominal attributes
                         num = new int[data.attribute(att).numValues()];
                         for (int k = 0; k < num.length; k++) {
-                            subsetIndices[k][0][i] = new int[sortedIndices[i].length];
-                            subsetWeights[k][0][i] = new double[sortedIndices[i].length];
+                            subsetIndices[k][i] = new int[end - start];
+                            subsetWeights[k][i] = new double[end - start];
                         }
-                        for (j = 0; j < sortedIndices[i].length; j++) {
+                        for (j = start; j < end; j++) {
                             final Instance inst = data.instance(sortedIndices[i][j]);
                             if (inst.isMissing(att)) {
 
@@ -1156,9 +2106,9 @@ public class RegressionDecisionTree extends Classifier
                                 splitInstanceUp(subsetIndices, subsetWeights, sortedIndices, weights, j, num, i);
                             } else {
                                 final int subset = (int) inst.value(att);
-                                subsetIndices[subset][0][i][num[subset]] =
+                                subsetIndices[subset][i][num[subset]] =
                                         sortedIndices[i][j];
-                                subsetWeights[subset][0][i][num[subset]] = weights[i][j];
+                                subsetWeights[subset][i][num[subset]] = weights[i][j];
                                 num[subset]++;
                             }
                         }
@@ -1167,18 +2117,18 @@ public class RegressionDecisionTree extends Classifier
                         // For numeric attributes
                         num = new int[2];
                         for (int k = 0; k < 2; k++) {
-                            subsetIndices[k][0][i] = new int[sortedIndices[i].length];
-                            subsetWeights[k][0][i] = new double[weights[i].length];
+                            subsetIndices[k][i] = new int[end - start];
+                            subsetWeights[k][i] = new double[end - start];
                         }
-                        for (j = 0; j < sortedIndices[i].length; j++) {
+                        for (j = start; j < end; j++) {
                             final Instance inst = data.instance(sortedIndices[i][j]);
                             if (inst.isMissing(att)) {
                                 // Split instance up
                                 splitInstanceUp(subsetIndices, subsetWeights, sortedIndices, weights, j, num, i);
                             } else {
                                 final int subset = inst.value(att) < splitPoint ? 0 : 1;
-                                subsetIndices[subset][0][i][num[subset]] = sortedIndices[i][j];
-                                subsetWeights[subset][0][i][num[subset]] = weights[i][j];
+                                subsetIndices[subset][i][num[subset]] = sortedIndices[i][j];
+                                subsetWeights[subset][i][num[subset]] = weights[i][j];
                                 num[subset]++;
                             }
                         }
@@ -1187,20 +2137,20 @@ public class RegressionDecisionTree extends Classifier
                     // Trim arrays
                     for (int k = 0; k < num.length; k++) {
                         final int[] copy = new int[num[k]];
-                        System.arraycopy(subsetIndices[k][0][i], 0, copy, 0, num[k]);
-                        subsetIndices[k][0][i] = copy;
+                        System.arraycopy(subsetIndices[k][i], 0, copy, 0, num[k]);
+                        subsetIndices[k][i] = copy;
                         final double[] copyWeights = new double[num[k]];
-                        System.arraycopy(subsetWeights[k][0][i], 0,
+                        System.arraycopy(subsetWeights[k][i], 0,
                                 copyWeights, 0, num[k]);
-                        subsetWeights[k][0][i] = copyWeights;
+                        subsetWeights[k][i] = copyWeights;
                     }
                 }
             }
         }
 
         private void splitInstanceUp(
-                final int[][][][] subsetIndices,
-                final double[][][][] subsetWeights,
+                final int[][][] subsetIndices,
+                final double[][][] subsetWeights,
                 final int[][] sortedIndices,
                 final double[][] weights,
                 final int j,
@@ -1208,8 +2158,8 @@ public class RegressionDecisionTree extends Classifier
                 final int i) {
             for (int k = 0; k < num.length; k++) {
                 if (m_Prop[k] > 0) {
-                    subsetIndices[k][0][i][num[k]] = sortedIndices[i][j];
-                    subsetWeights[k][0][i][num[k]] =
+                    subsetIndices[k][i][num[k]] = sortedIndices[i][j];
+                    subsetWeights[k][i][num[k]] =
                             m_Prop[k] * weights[i][j];
                     num[k]++;
                 }
@@ -1253,7 +2203,8 @@ public class RegressionDecisionTree extends Classifier
          */
         protected void insertHoldOutSet(final Instances data) {
             for (int i = 0; i < data.numInstances(); i++) {
-                insertHoldOutInstance(data.instance(i), data.instance(i).weight(), this);
+                insertHoldOutInstance(data.instance(i), data.instance(i).classValue(), data.instance(i).weight(), this,
+                        i, null);
             }
         }
 
@@ -1261,37 +2212,43 @@ public class RegressionDecisionTree extends Classifier
          * Inserts an instance from the hold-out set into the tree.
          *
          * @param inst   the instance to insert
+         * @param target the class value of the instance
          * @param weight the weight of the instance
          * @param parent the parent of the node
+         * @param index  the index of the instance in <tt>leaves</tt>
+         * @param leaves leaf reached by every instance, filled in if not <tt>null</tt>
          * @throws Exception if insertion fails
          */
-        @SuppressWarnings("OverlyComplexMethod")
+        @SuppressWarnings({"OverlyComplexMethod", "MethodWithTooManyParameters"})
         protected void insertHoldOutInstance(
                 final Instance inst,
+                final double target,
                 final double weight,
-                final Tree parent) {
+                final Tree parent,
+                final int index,
+                final Tree[] leaves) {
 
             // Insert instance into hold-out class distribution
             if (inst.classAttribute().isNominal()) {
 
                 // Nominal case
                 //noinspection NumericCastThatLosesPrecision
-                m_HoldOutDist[(int) inst.classValue()] += weight;
+                m_HoldOutDist[(int) target] += weight;
                 final int predictedClass = m_ClassProbs == null ?
                         Utils.maxIndex(parent.m_ClassProbs) :
                         Utils.maxIndex(m_ClassProbs);
                 //noinspection NumericCastThatLosesPrecision
-                if (predictedClass != (int) inst.classValue()) {
+                if (predictedClass != (int) target) {
                     m_HoldOutError += weight;
                 }
             } else {
 
                 // Numeric case
                 m_HoldOutDist[0] += weight;
-                m_HoldOutDist[1] += weight * inst.classValue();
+                m_HoldOutDist[1] += weight * target;
                 final double diff = m_ClassProbs == null ?
-                        parent.m_ClassProbs[0] - inst.classValue() :
-                        m_ClassProbs[0] - inst.classValue();
+                        parent.m_ClassProbs[0] - target :
+                        m_ClassProbs[0] - target;
                 m_HoldOutError += diff * diff * weight;
             }
 
@@ -1304,8 +2261,8 @@ public class RegressionDecisionTree extends Classifier
                     // Distribute instance
                     for (int i = 0; i < m_Successors.length; i++) {
                         if (m_Prop[i] > 0) {
-                            m_Successors[i].insertHoldOutInstance(inst, weight *
-                                    m_Prop[i], this);
+                            m_Successors[i].insertHoldOutInstance(inst, target, weight *
+                                    m_Prop[i], this, index, leaves);
                         }
                     }
                 } else {
@@ -1315,17 +2272,69 @@ public class RegressionDecisionTree extends Classifier
                         // Treat nominal attributes
                         //noinspection NumericCastThatLosesPrecision
                         m_Successors[(int) inst.value(m_Attribute)].
-                                insertHoldOutInstance(inst, weight, this);
+                                insertHoldOutInstance(inst, target, weight, this, index, leaves);
                     } else {
 
                         // Treat numeric attributes
                         if (inst.value(m_Attribute) < m_SplitPoint) {
-                            m_Successors[0].insertHoldOutInstance(inst, weight, this);
+                            m_Successors[0].insertHoldOutInstance(inst, target, weight, this, index, leaves);
                         } else {
-                            m_Successors[1].insertHoldOutInstance(inst, weight, this);
+                            m_Successors[1].insertHoldOutInstance(inst, target, weight, this, index, leaves);
                         }
                     }
                 }
+            } else {
+                recordLeaf(new int[]{index}, 0, 1, leaves);
+            }
+        }
+
+        /**
+         * Remembers successors of every node, pruning forgets them.
+         *
+         * @param successors map to fill
+         */
+        protected void collectSuccessors(final Map<Tree, Tree[]> successors) {
+            if (m_Successors != null) {
+                successors.put(this, m_Successors);
+                for (Tree successor : m_Successors) {
+                    successor.collectSuccessors(successors);
+                }
+            }
+        }
+
+        /**
+         * Computes prediction for every node of the unpruned tree in the numeric case: the value predicted for an
+         * instance which reached it, i.e. the mean of the leaf of the pruned tree which contains it, or of the
+         * nearest ancestor if that leaf has no mean.
+         *
+         * @param successors successors of the nodes before pruning
+         * @param parentMean mean predicted by the parent
+         * @param leafMean   prediction of the pruned leaf containing the node, <tt>null</tt> if node was not pruned
+         * @param values     map to fill
+         */
+        protected void leafValues(
+                final Map<Tree, Tree[]> successors,
+                final double parentMean,
+                final Double leafMean,
+                final Map<Tree, Double> values) {
+            double mean = parentMean;
+            Double value = leafMean;
+
+            if (value == null) {
+                if (m_ClassProbs != null) {
+                    mean = m_ClassProbs[0];
+                }
+                if (m_Attribute == -1) {
+                    value = mean;
+                }
+            }
+
+            if (value != null) {
+                values.put(this, value);
+            }
+
+            for (Tree successor : successors.getOrDefault(this, new Tree[0])) {
+                successor.leafValues(successors, mean, value, values);
             }
         }
 
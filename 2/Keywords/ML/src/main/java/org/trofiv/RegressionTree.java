@@ -1,8 +1,30 @@
 package org.trofiv;
 
+import weka.core.Instances;
+
 import java.util.List;
 import java.util.Map;
 
 interface RegressionTree {
     Map<Integer, List<Double>> sse();
+
+    /**
+     * Prepares the data for building trees on it with different targets.
+     *
+     * @param data    the data to train with
+     * @param targets class value of every instance, missing values are skipped
+     * @return presorted data
+     */
+    PresortedInstances presort(Instances data, double[] targets);
+
+    /**
+     * Builds the tree on presorted data with class values taken from <tt>targets</tt>, the data isn't modified.
+     *
+     * @param presorted the data to train with
+     * @param targets   class value of every instance, missing at the same instances as when presorting
+     * @return prediction for every instance of the data
+     * @throws Exception if building fails
+     */
+    @SuppressWarnings("ProhibitedExceptionDeclared")
+    double[] buildWithPredictions(PresortedInstances presorted, double[] targets) throws Exception;
 }
@@ -0,0 +1,136 @@
+package org.trofiv;
+
+import weka.classifiers.Classifier;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.*;
+import java.util.function.ToDoubleBiFunction;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Compiles trained regression trees and their boosted ensembles into classes with split points and means inlined, see
+ * {@link FlatEnsemble#toSource(String, double)}. Scorers take attribute values of an instance, as returned by
+ * <tt>Instance.toDoubleArray()</tt>, and predict the same as the model does.
+ * <p>
+ * Without JDK compiler available, scorers silently walk the flat layout of the model instead.
+ */
+final class ScorerCompiler {
+    private static final String CLASS_NAME = "CompiledScorer";
+
+    private ScorerCompiler() {
+    }
+
+    /**
+     * Compiles scorer of the tree.
+     *
+     * @param tree the trained tree
+     * @return the scorer
+     */
+    static ToDoubleFunction<double[]> compile(final RegressionDecisionTree tree) {
+        final FlatEnsemble flat = FlatEnsemble.of(new Classifier[]{tree}, 1, 1.0);
+        if (flat == null) {
+            throw new IllegalArgumentException("Tree isn't built or predicts by ZeroR!");
+        }
+
+        return compile(flat, 0);
+    }
+
+    /**
+     * Compiles scorer of the ensemble.
+     *
+     * @param ensemble the trained ensemble
+     * @return the scorer
+     * @throws Exception if mean can't be predicted
+     */
+    @SuppressWarnings("ProhibitedExceptionDeclared")
+    static ToDoubleFunction<double[]> compile(final BoostingAdditiveRegressionClassifier ensemble) throws Exception {
+        if (ensemble.m_zeroR == null) {
+            throw new IllegalArgumentException("Ensemble isn't built!");
+        }
+
+        // ZeroR predicts the mean whatever the instance is
+        final double mean = ensemble.m_zeroR.classifyInstance(null);
+        if (!ensemble.m_SuitableData) {
+            return values -> mean;
+        }
+        if (ensemble.m_Flat == null) {
+            throw new IllegalArgumentException("Only ensembles of regression trees can be compiled!");
+        }
+
+        return compile(ensemble.m_Flat, mean);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ToDoubleFunction<double[]> compile(final FlatEnsemble flat, final double prediction) {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            return values -> flat.predict(prediction, values);
+        }
+
+        final Map<String, String> sources = flat.toSource(CLASS_NAME, prediction);
+        final Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+
+        try (JavaFileManager fileManager = new ForwardingJavaFileManager<JavaFileManager>(
+                compiler.getStandardFileManager(diagnostics, null, null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(
+                    final Location location,
+                    final String className,
+                    final JavaFileObject.Kind kind,
+                    final FileObject sibling) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                classes.put(className, out);
+                return new SimpleJavaFileObject(URI.create("mem:///" + className + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return out;
+                    }
+                };
+            }
+        }) {
+            final List<JavaFileObject> files = new ArrayList<>(sources.size());
+            for (Map.Entry<String, String> source : sources.entrySet()) {
+                files.add(new SimpleJavaFileObject(
+                        URI.create("string:///" + source.getKey() + JavaFileObject.Kind.SOURCE.extension),
+                        JavaFileObject.Kind.SOURCE) {
+                    @Override
+                    public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+                        return source.getValue();
+                    }
+                });
+            }
+
+            if (!compiler.getTask(null, fileManager, diagnostics, Collections.singletonList("-g:none"), null,
+                    files).call()) {
+                throw new IllegalStateException("Can't compile scorer: " + diagnostics.getDiagnostics());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final ClassLoader loader = new ClassLoader(ScorerCompiler.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(final String name) throws ClassNotFoundException {
+                final ByteArrayOutputStream bytes = classes.get(name);
+                if (bytes == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+            }
+        };
+
+        final ToDoubleBiFunction<double[], Integer> splitUp = (values, node) -> flat.splitUp(node, values);
+        try {
+            return (ToDoubleFunction<double[]>) loader.loadClass(CLASS_NAME)
+                    .getConstructor(ToDoubleBiFunction.class)
+                    .newInstance(splitUp);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
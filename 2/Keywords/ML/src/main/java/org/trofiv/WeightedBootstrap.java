@@ -0,0 +1,49 @@
+package org.trofiv;
+
+import weka.core.Instances;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Bootstrap replicates of a data set kept as instance weights instead of resampled copies. Instances are drawn the
+ * same way <tt>Instances.resample()</tt> draws them and every instance is weighted by the number of times it's drawn,
+ * so that classifiers handling weighted instances train on the data itself. Instances which aren't drawn stay in the
+ * data with zero weight.
+ * <p>
+ * Weights are changed in place, the data mustn't be shared with others while replicates are drawn.
+ */
+class WeightedBootstrap {
+    private final Instances data;
+    private final double[] weights;
+    private final int[] counts;
+
+    WeightedBootstrap(final Instances data) {
+        this.data = data;
+        weights = new double[data.numInstances()];
+        counts = new int[data.numInstances()];
+
+        for (int i = 0; i < data.numInstances(); i++) {
+            weights[i] = data.instance(i).weight();
+        }
+    }
+
+    /**
+     * Draws the next replicate.
+     *
+     * @param random the random number generator
+     * @return the data weighted by the replicate
+     */
+    Instances draw(final Random random) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < counts.length; i++) {
+            counts[random.nextInt(counts.length)]++;
+        }
+
+        for (int i = 0; i < counts.length; i++) {
+            data.instance(i).setWeight(weights[i] * counts[i]);
+        }
+
+        return data;
+    }
+}
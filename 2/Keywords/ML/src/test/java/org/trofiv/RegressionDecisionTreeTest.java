@@ -0,0 +1,59 @@
+package org.trofiv;
+
+import org.junit.Assert;
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Random;
+
+public class RegressionDecisionTreeTest {
+    private static final int NUM_INSTANCES = 1000;
+    private static final int NUM_VALUES = 20;
+
+    /**
+     * With a bin per distinct value histograms try the same split points as exact split finding, so both grow the
+     * same tree, also when instances with missing values are split up between successors.
+     */
+    @Test
+    public void histogramTreeWithBinPerValueMatchesExactTree() throws Exception {
+        final Instances data = data();
+
+        final RegressionDecisionTree exact = new RegressionDecisionTree();
+        exact.buildClassifier(data);
+        final RegressionDecisionTree histogram = new RegressionDecisionTree(NUM_VALUES);
+        histogram.buildClassifier(data);
+
+        for (int i = 0; i < data.numInstances(); i++) {
+            final Instance instance = data.instance(i);
+            Assert.assertEquals(exact.classifyInstance(instance), histogram.classifyInstance(instance), 1.0e-9);
+        }
+    }
+
+    private static Instances data() {
+        final FastVector attributes = new FastVector();
+        attributes.addElement(new Attribute("first"));
+        attributes.addElement(new Attribute("second"));
+        attributes.addElement(new Attribute("third"));
+        attributes.addElement(new Attribute("class"));
+
+        final Instances data = new Instances("tree", attributes, NUM_INSTANCES);
+        data.setClassIndex(data.numAttributes() - 1);
+
+        final Random random = new Random(1);
+        for (int i = 0; i < NUM_INSTANCES; i++) {
+            final double[] values = {random.nextInt(NUM_VALUES), random.nextInt(NUM_VALUES),
+                    random.nextInt(NUM_VALUES), 0};
+            values[3] = values[0] + Math.sin(values[1]) + random.nextGaussian();
+            // missing values of every attribute, so that they are split up at every level of the tree
+            if (i % 5 == 0) {
+                values[i / 5 % 3] = Instance.missingValue();
+            }
+            data.add(new Instance(1, values));
+        }
+
+        return data;
+    }
+}
@@ -0,0 +1,91 @@
+package org.trofiv;
+
+import org.junit.Assert;
+import org.junit.Test;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Random;
+import java.util.function.ToDoubleFunction;
+
+public class ScorerCompilerTest {
+    private static final int NUM_ITERATIONS = 5000;
+    private static final int NUM_INSTANCES = 500;
+    /**
+     * Boosting sees only this part of predictions of every tree, so that residuals shrink slowly and boosting doesn't
+     * stop before all iterations are performed.
+     */
+    private static final double DAMPING = 1.0e-4;
+
+    @Test
+    public void compiledEnsemblePredictsAsClassifier() throws Exception {
+        final Instances data = data();
+
+        final BoostingAdditiveRegressionClassifier ensemble =
+                new BoostingAdditiveRegressionClassifier(new DampedTree(), DampedTree::new);
+        ensemble.setNumIterations(NUM_ITERATIONS);
+        ensemble.buildClassifier(data);
+        Assert.assertEquals(NUM_ITERATIONS, ensemble.m_NumIterationsPerformed);
+
+        final ToDoubleFunction<double[]> scorer = ScorerCompiler.compile(ensemble);
+
+        for (int i = 0; i < data.numInstances(); i++) {
+            final Instance instance = data.instance(i);
+            Assert.assertEquals(ensemble.classifyInstance(instance), scorer.applyAsDouble(instance.toDoubleArray()),
+                    0.0);
+        }
+    }
+
+    @Test
+    public void compiledTreePredictsAsClassifier() throws Exception {
+        final Instances data = data();
+
+        final RegressionDecisionTree tree = new RegressionDecisionTree();
+        tree.buildClassifier(data);
+
+        final ToDoubleFunction<double[]> scorer = ScorerCompiler.compile(tree);
+
+        for (int i = 0; i < data.numInstances(); i++) {
+            final Instance instance = data.instance(i);
+            Assert.assertEquals(tree.classifyInstance(instance), scorer.applyAsDouble(instance.toDoubleArray()), 0.0);
+        }
+    }
+
+    private static Instances data() {
+        final FastVector attributes = new FastVector();
+        attributes.addElement(new Attribute("gaussian"));
+        attributes.addElement(new Attribute("integer"));
+        attributes.addElement(new Attribute("uniform"));
+        attributes.addElement(new Attribute("class"));
+
+        final Instances data = new Instances("scorer", attributes, NUM_INSTANCES);
+        data.setClassIndex(data.numAttributes() - 1);
+
+        final Random random = new Random(1);
+        for (int i = 0; i < NUM_INSTANCES; i++) {
+            final double[] values = {random.nextGaussian(), random.nextInt(20), random.nextDouble(), 0};
+            values[3] = values[0] + Math.sin(values[1]) + random.nextGaussian();
+            // missing values go down every branch of a split
+            if (i % 7 == 0) {
+                values[0] = Instance.missingValue();
+            }
+            data.add(new Instance(1, values));
+        }
+
+        return data;
+    }
+
+    private static final class DampedTree extends RegressionDecisionTree {
+        @Override
+        public double[] buildWithPredictions(final PresortedInstances presorted, final double[] targets)
+                throws Exception {
+            final double[] predictions = super.buildWithPredictions(presorted, targets);
+            for (int i = 0; i < predictions.length; i++) {
+                predictions[i] *= DAMPING;
+            }
+            return predictions;
+        }
+    }
+}
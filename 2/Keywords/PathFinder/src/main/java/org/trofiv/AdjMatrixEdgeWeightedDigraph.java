@@ -88,6 +88,17 @@ public class AdjMatrixEdgeWeightedDigraph {
         }
     }
 
+    /**
+     * Returns the directed edge from vertex <tt>v</tt> to vertex <tt>w</tt>.
+     *
+     * @param v the tail vertex
+     * @param w the head vertex
+     * @return the edge, <tt>null</tt> if there is no such edge
+     */
+    public DirectedEdge edge(final int v, final int w) {
+        return adj[v][w];
+    }
+
     /**
      * Returns the directed edges incident from vertex <tt>v</tt>.
      *
@@ -0,0 +1,33 @@
+package org.trofiv;
+
+public interface AllPairsShortestPaths {
+    /**
+     * Is there a path from the vertex <tt>s</tt> to vertex <tt>t</tt>?
+     *
+     * @param s the source vertex
+     * @param t the destination vertex
+     * @return <tt>true</tt> if there is a path from vertex <tt>s</tt>
+     * to vertex <tt>t</tt>, and <tt>false</tt> otherwise
+     */
+    boolean hasPath(final int s, final int t);
+
+    /**
+     * Returns the length of a shortest path from vertex <tt>s</tt> to vertex <tt>t</tt>.
+     *
+     * @param s the source vertex
+     * @param t the destination vertex
+     * @return the length of a shortest path from vertex <tt>s</tt> to vertex <tt>t</tt>;
+     * <tt>Double.POSITIVE_INFINITY</tt> if no such path
+     */
+    double dist(final int s, final int t);
+
+    /**
+     * Returns a shortest path from vertex <tt>s</tt> to vertex <tt>t</tt>.
+     *
+     * @param s the source vertex
+     * @param t the destination vertex
+     * @return a shortest path from vertex <tt>s</tt> to vertex <tt>t</tt>
+     * as a stack of edges (first edge on top), and <tt>null</tt> if no such path
+     */
+    Iterable<DirectedEdge> path(final int s, final int t);
+}
@@ -0,0 +1,356 @@
+package org.trofiv;
+
+import java.util.Arrays;
+import java.util.Stack;
+
+/**
+ * Floyd-Warshall with configurable precision of the distance matrix. Distances can be kept as <tt>double</tt>,
+ * <tt>float</tt> or as fixed-point <tt>int</tt> / <tt>short</tt> values (weight multiplied by <tt>scale</tt> and
+ * rounded), which takes a half or a quarter of the memory and bandwidth of distances of the relaxation loop.
+ * <p>
+ * Shortest paths are kept as a matrix of 16-bit predecessor vertices rather than of edges, and their edges are taken
+ * from the graph when a path is asked for. A pair of vertices takes 10 bytes with <tt>double</tt> distances, 6 with
+ * <tt>float</tt> or <tt>int</tt> and 4 with <tt>short</tt> ones, so graphs are limited to {@link #MAX_VERTICES}.
+ * <p>
+ * Missing paths are kept as infinity (<tt>MAX_VALUE</tt> for fixed-point) and are never added up. A detour which
+ * doesn't fit the chosen precision is not shorter than a path already found; if it would be the first path between
+ * its vertices, construction fails instead of silently wrapping around or turning the path into a missing one.
+ */
+public class CompactFloydWarshall implements AllPairsShortestPaths {
+    private static final String NEGATIVE_COST_CYCLE_EXISTS = "Negative cost cycle exists";
+
+    /**
+     * Storage type of the distances.
+     */
+    public enum Precision {
+        DOUBLE, FLOAT, INT, SHORT
+    }
+
+    /**
+     * Maximum number of vertices, one more is the marker of a missing predecessor.
+     */
+    public static final int MAX_VERTICES = Character.MAX_VALUE;
+    private static final char NO_VERTEX = Character.MAX_VALUE;
+
+    private final AdjMatrixEdgeWeightedDigraph graph;
+    private final Distances distTo;  // distTo.get(v, w) = length of shortest v->w path
+    private final char[][] pathTo;  // pathTo[v][w] = tail of the last edge on shortest v->w path, or NO_VERTEX
+    private boolean hasNegativeCycle;
+
+    /**
+     * Computes shortest paths between every pair of vertices.
+     *
+     * @param G         the edge-weighted digraph
+     * @param precision storage type of the distances
+     * @param scale     multiplier of the weights for fixed-point precisions, ignored otherwise
+     * @throws IllegalArgumentException if scale is not positive, the graph has more than {@link #MAX_VERTICES}
+     *                                  vertices or a distance doesn't fit the precision
+     */
+    public CompactFloydWarshall(final AdjMatrixEdgeWeightedDigraph G, final Precision precision, final double scale) {
+        if (scale <= 0) {
+            throw new IllegalArgumentException("Scale must be positive");
+        }
+
+        final int V = G.V();
+        if (V > MAX_VERTICES) {
+            throw new IllegalArgumentException("Graph must have at most " + MAX_VERTICES + " vertices");
+        }
+
+        graph = G;
+        pathTo = new char[V][V];
+        for (char[] row : pathTo) {
+            Arrays.fill(row, NO_VERTEX);
+        }
+
+        switch (precision) {
+            case FLOAT:
+                distTo = new FloatDistances(V);
+                break;
+            case INT:
+                distTo = new IntDistances(V, scale);
+                break;
+            case SHORT:
+                distTo = new ShortDistances(V, scale);
+                break;
+            default:
+                distTo = new DoubleDistances(V);
+                break;
+        }
+
+        // initialize distances using edge-weighted digraph's
+        for (int v = 0; v < V; v++) {
+            for (DirectedEdge e : G.adj(v)) {
+                distTo.set(e.from(), e.to(), e.weight());
+                pathTo[e.from()][e.to()] = (char) e.from();
+            }
+            // in case of self-loops
+            if (distTo.get(v, v) >= 0.0) {
+                distTo.set(v, v, 0.0);
+                pathTo[v][v] = NO_VERTEX;
+            }
+        }
+
+        // Floyd-Warshall updates
+        for (int i = 0; i < V; i++) {
+            for (int v = 0; v < V; v++) {
+                if (pathTo[v][i] == NO_VERTEX) continue;  // optimization
+                distTo.relax(v, i, pathTo[v], pathTo[i]);
+                // check for negative cycle
+                if (distTo.get(v, v) < 0.0) {
+                    hasNegativeCycle = true;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Is there a negative cycle?
+     *
+     * @return <tt>true</tt> if there is a negative cycle, and <tt>false</tt> otherwise
+     */
+    public boolean hasNegativeCycle() {
+        return hasNegativeCycle;
+    }
+
+    @Override
+    public boolean hasPath(final int s, final int t) {
+        return distTo.get(s, t) < Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public double dist(final int s, final int t) {
+        if (hasNegativeCycle) {
+            throw new UnsupportedOperationException(NEGATIVE_COST_CYCLE_EXISTS);
+        }
+        return distTo.get(s, t);
+    }
+
+    @Override
+    public Iterable<DirectedEdge> path(final int s, final int t) {
+        if (hasNegativeCycle) {
+            throw new UnsupportedOperationException(NEGATIVE_COST_CYCLE_EXISTS);
+        }
+        if (!hasPath(s, t)) {
+            return null;
+        }
+        final Stack<DirectedEdge> path = new Stack<>();
+        for (int w = t; pathTo[s][w] != NO_VERTEX; w = pathTo[s][w]) {
+            path.push(graph.edge(pathTo[s][w], w));
+        }
+        return path;
+    }
+
+    private abstract static class Distances {
+        abstract double get(final int v, final int w);
+
+        abstract void set(final int v, final int w, final double weight);
+
+        // relaxes row v through the vertex i
+        abstract void relax(final int v, final int i, final char[] pathV, final char[] pathI);
+    }
+
+    private static final class DoubleDistances extends Distances {
+        private final double[][] distTo;
+
+        private DoubleDistances(final int V) {
+            distTo = new double[V][V];
+            for (double[] row : distTo) {
+                Arrays.fill(row, Double.POSITIVE_INFINITY);
+            }
+        }
+
+        @Override
+        double get(final int v, final int w) {
+            return distTo[v][w];
+        }
+
+        @Override
+        void set(final int v, final int w, final double weight) {
+            distTo[v][w] = weight;
+        }
+
+        @Override
+        void relax(final int v, final int i, final char[] pathV, final char[] pathI) {
+            final double[] distV = distTo[v];
+            final double[] distI = distTo[i];
+            final double viaI = distV[i];
+
+            for (int w = 0; w < distV.length; w++) {
+                if (distV[w] > viaI + distI[w]) {
+                    distV[w] = viaI + distI[w];
+                    pathV[w] = pathI[w];
+                }
+            }
+        }
+    }
+
+    private static final class FloatDistances extends Distances {
+        private final float[][] distTo;
+
+        private FloatDistances(final int V) {
+            distTo = new float[V][V];
+            for (float[] row : distTo) {
+                Arrays.fill(row, Float.POSITIVE_INFINITY);
+            }
+        }
+
+        @Override
+        double get(final int v, final int w) {
+            return distTo[v][w];
+        }
+
+        @Override
+        void set(final int v, final int w, final double weight) {
+            final float value = (float) weight;
+            if (Float.isInfinite(value) && !Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Weight " + weight + " doesn't fit float precision");
+            }
+            distTo[v][w] = value;
+        }
+
+        @Override
+        void relax(final int v, final int i, final char[] pathV, final char[] pathI) {
+            final float[] distV = distTo[v];
+            final float[] distI = distTo[i];
+            final float viaI = distV[i];
+
+            if (viaI == Float.POSITIVE_INFINITY) {
+                return;
+            }
+
+            for (int w = 0; w < distV.length; w++) {
+                final float candidate = viaI + distI[w];
+                if (distV[w] > candidate) {
+                    distV[w] = candidate;
+                    pathV[w] = pathI[w];
+                } else if (candidate == Float.POSITIVE_INFINITY && distI[w] != Float.POSITIVE_INFINITY
+                        && distV[w] == Float.POSITIVE_INFINITY) {
+                    throw new IllegalArgumentException("Distance doesn't fit float precision");
+                }
+            }
+        }
+    }
+
+    private static final class IntDistances extends Distances {
+        private static final int INFINITY = Integer.MAX_VALUE;
+
+        private final int[][] distTo;
+        private final double scale;
+
+        private IntDistances(final int V, final double scale) {
+            this.scale = scale;
+            distTo = new int[V][V];
+            for (int[] row : distTo) {
+                Arrays.fill(row, INFINITY);
+            }
+        }
+
+        @Override
+        double get(final int v, final int w) {
+            return distTo[v][w] == INFINITY ? Double.POSITIVE_INFINITY : distTo[v][w] / scale;
+        }
+
+        @Override
+        void set(final int v, final int w, final double weight) {
+            distTo[v][w] = (int) fixedPoint(weight, scale, INFINITY);
+        }
+
+        @Override
+        void relax(final int v, final int i, final char[] pathV, final char[] pathI) {
+            final int[] distV = distTo[v];
+            final int[] distI = distTo[i];
+            final long viaI = distV[i];
+
+            if (viaI == INFINITY) {
+                return;
+            }
+
+            for (int w = 0; w < distV.length; w++) {
+                if (distI[w] == INFINITY) {
+                    continue;
+                }
+                final long candidate = viaI + distI[w];
+                if (candidate >= INFINITY && distV[w] != INFINITY) {
+                    continue;
+                }
+                checkRange(candidate, INFINITY);
+                if (distV[w] > candidate) {
+                    distV[w] = (int) candidate;
+                    pathV[w] = pathI[w];
+                }
+            }
+        }
+    }
+
+    private static final class ShortDistances extends Distances {
+        private static final short INFINITY = Short.MAX_VALUE;
+
+        private final short[][] distTo;
+        private final double scale;
+
+        private ShortDistances(final int V, final double scale) {
+            this.scale = scale;
+            distTo = new short[V][V];
+            for (short[] row : distTo) {
+                Arrays.fill(row, INFINITY);
+            }
+        }
+
+        @Override
+        double get(final int v, final int w) {
+            return distTo[v][w] == INFINITY ? Double.POSITIVE_INFINITY : distTo[v][w] / scale;
+        }
+
+        @Override
+        void set(final int v, final int w, final double weight) {
+            distTo[v][w] = (short) fixedPoint(weight, scale, INFINITY);
+        }
+
+        @Override
+        void relax(final int v, final int i, final char[] pathV, final char[] pathI) {
+            final short[] distV = distTo[v];
+            final short[] distI = distTo[i];
+            final int viaI = distV[i];
+
+            if (viaI == INFINITY) {
+                return;
+            }
+
+            for (int w = 0; w < distV.length; w++) {
+                if (distI[w] == INFINITY) {
+                    continue;
+                }
+                final int candidate = viaI + distI[w];
+                if (candidate >= INFINITY && distV[w] != INFINITY) {
+                    continue;
+                }
+                checkRange(candidate, INFINITY);
+                if (distV[w] > candidate) {
+                    distV[w] = (short) candidate;
+                    pathV[w] = pathI[w];
+                }
+            }
+        }
+    }
+
+    // rounds scaled weight, infinity maps to the sentinel
+    private static long fixedPoint(final double weight, final double scale, final long infinity) {
+        if (weight == Double.POSITIVE_INFINITY) {
+            return infinity;
+        }
+        if (Double.isNaN(weight) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("Weight " + weight + " can't be stored as fixed-point");
+        }
+        return checkRange(Math.round(weight * scale), infinity);
+    }
+
+    // finite values must stay strictly between -infinity and the infinity sentinel
+    private static long checkRange(final long value, final long infinity) {
+        if (value >= infinity || value <= -infinity) {
+            throw new IllegalArgumentException("Distance doesn't fit fixed-point precision, "
+                    + "use smaller scale or wider precision");
+        }
+        return value;
+    }
+}
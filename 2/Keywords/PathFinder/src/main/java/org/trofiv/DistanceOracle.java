@@ -0,0 +1,421 @@
+package org.trofiv;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Exact distance oracle based on pruned landmark labelling (2-hop cover). Every vertex keeps an out-label (hubs it
+ * reaches, with distances) and an in-label (hubs reaching it). Distance between two vertices is the minimum over the
+ * hubs they share, so a query is a merge of two short sorted arrays instead of an all-pairs computation.
+ * <p>
+ * Hubs are processed in descending order of degree; label entries also store the neighbour on the shortest path to
+ * (or from) the hub, which is enough to restore the path itself.
+ */
+@SuppressWarnings("WeakerAccess")
+public class DistanceOracle implements AllPairsShortestPaths {
+    private static final int FORMAT_MAGIC = 0x504C4C31; // "PLL1"
+    private static final int NO_PARENT = -1;
+
+    private final List<String> authors;
+    private final Map<String, Integer> authorIndices;
+    private final int[] order; // order[rank] = vertex
+    private final Label[] outLabels;
+    private final Label[] inLabels;
+
+    private DistanceOracle(final List<String> authors, final int[] order, final Label[] outLabels, final Label[] inLabels) {
+        this.authors = authors;
+        this.order = order;
+        this.outLabels = outLabels;
+        this.inLabels = inLabels;
+        this.authorIndices = new HashMap<>(authors.size() * 2, 1);
+
+        for (int i = 0; i < authors.size(); i++) {
+            authorIndices.put(authors.get(i), i);
+        }
+    }
+
+    /**
+     * Builds labels for the edge-weighted digraph. Edges with infinite weight and self-loops are ignored.
+     *
+     * @param graph   the graph
+     * @param authors author names, one per vertex
+     * @return distance oracle
+     * @throws IllegalArgumentException if number of authors doesn't match number of vertices
+     */
+    public static DistanceOracle build(final AdjMatrixEdgeWeightedDigraph graph, final List<String> authors) {
+        final int V = graph.V();
+
+        if (authors.size() != V) {
+            throw new IllegalArgumentException("Each vertex must have an author!");
+        }
+
+        final List<List<DirectedEdge>> outEdges = new ArrayList<>(V);
+        final List<List<DirectedEdge>> inEdges = new ArrayList<>(V);
+
+        for (int v = 0; v < V; v++) {
+            outEdges.add(new ArrayList<>());
+            inEdges.add(new ArrayList<>());
+        }
+
+        for (int v = 0; v < V; v++) {
+            for (DirectedEdge e : graph.adj(v)) {
+                if (e.from() != e.to() && e.weight() < Double.POSITIVE_INFINITY) {
+                    outEdges.get(e.from()).add(e);
+                    inEdges.get(e.to()).add(e);
+                }
+            }
+        }
+
+        final int[] order = new int[V];
+        final int[] rank = new int[V];
+        final Integer[] byDegree = new Integer[V];
+
+        for (int v = 0; v < V; v++) {
+            byDegree[v] = v;
+        }
+
+        Arrays.sort(byDegree, (a, b) -> {
+            final int degreeA = outEdges.get(a).size() + inEdges.get(a).size();
+            final int degreeB = outEdges.get(b).size() + inEdges.get(b).size();
+            return degreeA == degreeB ? Integer.compare(a, b) : Integer.compare(degreeB, degreeA);
+        });
+
+        for (int r = 0; r < V; r++) {
+            order[r] = byDegree[r];
+            rank[byDegree[r]] = r;
+        }
+
+        final Label[] outLabels = new Label[V];
+        final Label[] inLabels = new Label[V];
+
+        for (int v = 0; v < V; v++) {
+            outLabels[v] = new Label();
+            inLabels[v] = new Label();
+        }
+
+        final double[] distTo = new double[V];
+        final int[] parent = new int[V];
+        final double[] rootLabel = new double[V];
+        Arrays.fill(distTo, Double.POSITIVE_INFINITY);
+        Arrays.fill(rootLabel, Double.POSITIVE_INFINITY);
+
+        for (int r = 0; r < V; r++) {
+            final int root = order[r];
+            // forward search fills in-labels of reached vertices, pruned by root's out-label
+            prunedDijkstra(root, r, outEdges, outLabels[root], inLabels, true, distTo, parent, rootLabel, rank);
+            // backward search fills out-labels, pruned by root's in-label
+            prunedDijkstra(root, r, inEdges, inLabels[root], outLabels, false, distTo, parent, rootLabel, rank);
+        }
+
+        for (int v = 0; v < V; v++) {
+            outLabels[v].trim();
+            inLabels[v].trim();
+        }
+
+        return new DistanceOracle(new ArrayList<>(authors), order, outLabels, inLabels);
+    }
+
+    @SuppressWarnings({"MethodWithTooManyParameters", "OverlyComplexMethod"})
+    private static void prunedDijkstra(
+            final int root,
+            final int rootRank,
+            final List<List<DirectedEdge>> edges,
+            final Label rootOwnLabel,
+            final Label[] labels,
+            final boolean forward,
+            final double[] distTo,
+            final int[] parent,
+            final double[] rootLabel,
+            final int[] rank) {
+        for (int i = 0; i < rootOwnLabel.size; i++) {
+            rootLabel[rootOwnLabel.hubs[i]] = rootOwnLabel.dists[i];
+        }
+
+        final Collection<Integer> visited = new ArrayList<>();
+        final PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+        distTo[root] = 0;
+        parent[root] = NO_PARENT;
+        visited.add(root);
+        queue.add(new QueueEntry(root, 0));
+
+        while (!queue.isEmpty()) {
+            final QueueEntry entry = queue.poll();
+            final int v = entry.vertex;
+
+            if (entry.dist > distTo[v]) {
+                continue;
+            }
+
+            // prune if already covered by higher ranked hubs
+            final Label label = labels[v];
+            boolean covered = false;
+            for (int i = 0; i < label.size && !covered; i++) {
+                covered = rootLabel[label.hubs[i]] + label.dists[i] <= distTo[v];
+            }
+            if (covered) {
+                continue;
+            }
+
+            label.add(rootRank, distTo[v], parent[v]);
+
+            for (DirectedEdge e : edges.get(v)) {
+                final int w = forward ? e.to() : e.from();
+                final double dist = distTo[v] + e.weight();
+
+                if (rank[w] > rootRank && dist < distTo[w]) {
+                    if (distTo[w] == Double.POSITIVE_INFINITY) {
+                        visited.add(w);
+                    }
+                    distTo[w] = dist;
+                    parent[w] = v;
+                    queue.add(new QueueEntry(w, dist));
+                }
+            }
+        }
+
+        for (int v : visited) {
+            distTo[v] = Double.POSITIVE_INFINITY;
+        }
+        for (int i = 0; i < rootOwnLabel.size; i++) {
+            rootLabel[rootOwnLabel.hubs[i]] = Double.POSITIVE_INFINITY;
+        }
+    }
+
+    /**
+     * Reads oracle previously written by {@link #save(File)}.
+     *
+     * @param file the index file
+     * @return distance oracle
+     * @throws IOException if file can't be read or has wrong format
+     */
+    public static DistanceOracle load(final File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_MAGIC) {
+                throw new IOException("File " + file + " is not a distance oracle index!");
+            }
+
+            final int V = in.readInt();
+            final List<String> authors = new ArrayList<>(V);
+            final int[] order = new int[V];
+            final Label[] outLabels = new Label[V];
+            final Label[] inLabels = new Label[V];
+
+            for (int v = 0; v < V; v++) {
+                authors.add(in.readUTF());
+            }
+            for (int r = 0; r < V; r++) {
+                order[r] = in.readInt();
+            }
+            for (int v = 0; v < V; v++) {
+                outLabels[v] = Label.read(in);
+                inLabels[v] = Label.read(in);
+            }
+
+            return new DistanceOracle(authors, order, outLabels, inLabels);
+        }
+    }
+
+    /**
+     * Writes the oracle to a binary index file.
+     *
+     * @param file the index file
+     * @throws IOException if file can't be written
+     */
+    public void save(final File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(FORMAT_MAGIC);
+            out.writeInt(authors.size());
+
+            for (String author : authors) {
+                out.writeUTF(author);
+            }
+            for (int vertex : order) {
+                out.writeInt(vertex);
+            }
+            for (int v = 0; v < authors.size(); v++) {
+                outLabels[v].write(out);
+                inLabels[v].write(out);
+            }
+        }
+    }
+
+    public List<String> getAuthors() {
+        return Collections.unmodifiableList(authors);
+    }
+
+    /**
+     * Returns vertex of the author.
+     *
+     * @param author author name
+     * @return vertex index
+     * @throws IllegalArgumentException if there is no such author
+     */
+    public int vertex(final String author) {
+        final Integer vertex = authorIndices.get(author);
+
+        if (vertex == null) {
+            throw new IllegalArgumentException("Unknown author " + author);
+        }
+
+        return vertex;
+    }
+
+    @Override
+    public boolean hasPath(final int s, final int t) {
+        return dist(s, t) < Double.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public double dist(final int s, final int t) {
+        return s == t ? 0.0 : outLabels[s].join(inLabels[t])[0];
+    }
+
+    @Override
+    public Iterable<DirectedEdge> path(final int s, final int t) {
+        final double[] best = outLabels[s].join(inLabels[t]);
+
+        if (best[0] == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+
+        final Stack<DirectedEdge> path = new Stack<>();
+
+        if (s == t) {
+            return path;
+        }
+
+        //noinspection NumericCastThatLosesPrecision
+        final int hubRank = (int) best[1];
+        final int hub = order[hubRank];
+
+        // hub -> t, walked backwards from t
+        for (int v = t; v != hub; ) {
+            final int previous = inLabels[v].parent(hubRank);
+            path.push(new DirectedEdge(previous, v, inLabels[v].dist(hubRank) - inLabels[previous].dist(hubRank)));
+            v = previous;
+        }
+
+        // s -> hub, walked forwards from s
+        final List<DirectedEdge> head = new ArrayList<>();
+        for (int v = s; v != hub; ) {
+            final int next = outLabels[v].parent(hubRank);
+            head.add(new DirectedEdge(v, next, outLabels[v].dist(hubRank) - outLabels[next].dist(hubRank)));
+            v = next;
+        }
+
+        for (int i = head.size() - 1; i >= 0; i--) {
+            path.push(head.get(i));
+        }
+
+        return path;
+    }
+
+    // hub label of one vertex, entries are sorted by hub rank
+    private static final class Label {
+        private int size;
+        private int[] hubs = new int[4];
+        private double[] dists = new double[4];
+        private int[] parents = new int[4];
+
+        private static Label read(final DataInput in) throws IOException {
+            final Label label = new Label();
+            label.size = in.readInt();
+            label.hubs = new int[label.size];
+            label.dists = new double[label.size];
+            label.parents = new int[label.size];
+
+            for (int i = 0; i < label.size; i++) {
+                label.hubs[i] = in.readInt();
+                label.dists[i] = in.readDouble();
+                label.parents[i] = in.readInt();
+            }
+
+            return label;
+        }
+
+        private void write(final DataOutput out) throws IOException {
+            out.writeInt(size);
+
+            for (int i = 0; i < size; i++) {
+                out.writeInt(hubs[i]);
+                out.writeDouble(dists[i]);
+                out.writeInt(parents[i]);
+            }
+        }
+
+        private void add(final int hub, final double dist, final int parent) {
+            if (size == hubs.length) {
+                hubs = Arrays.copyOf(hubs, size * 2);
+                dists = Arrays.copyOf(dists, size * 2);
+                parents = Arrays.copyOf(parents, size * 2);
+            }
+            hubs[size] = hub;
+            dists[size] = dist;
+            parents[size] = parent;
+            size++;
+        }
+
+        private void trim() {
+            hubs = Arrays.copyOf(hubs, size);
+            dists = Arrays.copyOf(dists, size);
+            parents = Arrays.copyOf(parents, size);
+        }
+
+        private int indexOf(final int hub) {
+            final int index = Arrays.binarySearch(hubs, 0, size, hub);
+
+            if (index < 0) {
+                throw new IllegalStateException("Hub " + hub + " is missing from the label!");
+            }
+
+            return index;
+        }
+
+        private double dist(final int hub) {
+            return dists[indexOf(hub)];
+        }
+
+        private int parent(final int hub) {
+            return parents[indexOf(hub)];
+        }
+
+        // returns {distance, hub rank} of the best common hub
+        private double[] join(final Label other) {
+            double best = Double.POSITIVE_INFINITY;
+            int bestHub = NO_PARENT;
+
+            for (int i = 0, j = 0; i < size && j < other.size; ) {
+                if (hubs[i] < other.hubs[j]) {
+                    i++;
+                } else if (hubs[i] > other.hubs[j]) {
+                    j++;
+                } else {
+                    final double dist = dists[i] + other.dists[j];
+                    if (dist < best) {
+                        best = dist;
+                        bestHub = hubs[i];
+                    }
+                    i++;
+                    j++;
+                }
+            }
+
+            return new double[]{best, bestHub};
+        }
+    }
+
+    private static final class QueueEntry implements Comparable<QueueEntry> {
+        private final int vertex;
+        private final double dist;
+
+        private QueueEntry(final int vertex, final double dist) {
+            this.vertex = vertex;
+            this.dist = dist;
+        }
+
+        @Override
+        public int compareTo(final QueueEntry o) {
+            return Double.compare(dist, o.dist);
+        }
+    }
+}
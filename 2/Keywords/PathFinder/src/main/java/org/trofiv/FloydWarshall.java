@@ -3,7 +3,7 @@ package org.trofiv;
 import java.util.Stack;
 
 @SuppressWarnings("ALL")
-public class FloydWarshall {
+public class FloydWarshall implements AllPairsShortestPaths {
     private boolean hasNegativeCycle;  // is there a negative cycle?
     private double[][] distTo;  // distTo[v][w] = length of shortest v->w path
     private DirectedEdge[][] edgeTo;  // edgeTo[v][w] = last edge on shortest v->w path
@@ -0,0 +1,171 @@
+package org.trofiv;
+
+import java.util.Arrays;
+import java.util.Stack;
+
+/**
+ * Floyd-Warshall over several weight layers of one vertex set. All layers are relaxed in the same
+ * traversal: distances and last edges are stored interleaved (<tt>[v][w * layers + k]</tt>), so each
+ * row of the matrix is streamed through memory once for all layers instead of once per layer.
+ */
+public class FusedFloydWarshall {
+    private static final String NEGATIVE_COST_CYCLE_EXISTS = "Negative cost cycle exists";
+
+    private final int layers;
+    private final double[][] distTo;  // distTo[v][w * layers + k] = length of shortest v->w path in layer k
+    private final DirectedEdge[][] edgeTo;  // edgeTo[v][w * layers + k] = last edge on shortest v->w path in layer k
+    private boolean hasNegativeCycle;
+
+    /**
+     * Computes shortest paths between every pair of vertices for each of the given edge-weighted
+     * digraphs. Digraphs must have the same number of vertices; vertex <tt>v</tt> of every layer is
+     * considered the same vertex.
+     *
+     * @param graphs the weight layers
+     * @throws IllegalArgumentException if no layers given or layers have different number of vertices
+     */
+    @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod"})
+    public FusedFloydWarshall(final AdjMatrixEdgeWeightedDigraph... graphs) {
+        if (graphs.length == 0) {
+            throw new IllegalArgumentException("At least one graph layer must be provided!");
+        }
+
+        final int V = graphs[0].V();
+        for (AdjMatrixEdgeWeightedDigraph graph : graphs) {
+            if (graph.V() != V) {
+                throw new IllegalArgumentException("All graph layers must have the same number of vertices!");
+            }
+        }
+
+        layers = graphs.length;
+        distTo = new double[V][V * layers];
+        edgeTo = new DirectedEdge[V][V * layers];
+
+        // initialize distances using edge-weighted digraph's
+        for (int v = 0; v < V; v++) {
+            Arrays.fill(distTo[v], Double.POSITIVE_INFINITY);
+        }
+        for (int k = 0; k < layers; k++) {
+            for (int v = 0; v < V; v++) {
+                for (DirectedEdge e : graphs[k].adj(v)) {
+                    distTo[e.from()][e.to() * layers + k] = e.weight();
+                    edgeTo[e.from()][e.to() * layers + k] = e;
+                }
+                // in case of self-loops
+                if (distTo[v][v * layers + k] >= 0.0) {
+                    distTo[v][v * layers + k] = 0.0;
+                    edgeTo[v][v * layers + k] = null;
+                }
+            }
+        }
+
+        // Floyd-Warshall updates, all layers at once
+        final double[] viaI = new double[layers];
+        for (int i = 0; i < V; i++) {
+            final double[] distI = distTo[i];
+            final DirectedEdge[] edgeI = edgeTo[i];
+
+            for (int v = 0; v < V; v++) {
+                final double[] distV = distTo[v];
+                final DirectedEdge[] edgeV = edgeTo[v];
+
+                // optimization: skip v if i is unreachable from v in every layer
+                boolean reachable = false;
+                for (int k = 0; k < layers; k++) {
+                    viaI[k] = distV[i * layers + k];
+                    reachable |= edgeV[i * layers + k] != null;
+                }
+                if (!reachable) {
+                    continue;
+                }
+
+                for (int w = 0, base = 0; w < V; w++, base += layers) {
+                    for (int k = 0; k < layers; k++) {
+                        final double candidate = viaI[k] + distI[base + k];
+                        if (distV[base + k] > candidate) {
+                            distV[base + k] = candidate;
+                            edgeV[base + k] = edgeI[base + k];
+                        }
+                    }
+                }
+
+                // check for negative cycle
+                for (int k = 0; k < layers; k++) {
+                    if (distV[v * layers + k] < 0.0) {
+                        hasNegativeCycle = true;
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of weight layers.
+     *
+     * @return the number of weight layers
+     */
+    public int layers() {
+        return layers;
+    }
+
+    /**
+     * Is there a negative cycle in any layer?
+     *
+     * @return <tt>true</tt> if there is a negative cycle, and <tt>false</tt> otherwise
+     */
+    public boolean hasNegativeCycle() {
+        return hasNegativeCycle;
+    }
+
+    /**
+     * Returns shortest paths of a single layer.
+     *
+     * @param k the layer index, in the order graphs were passed to the constructor
+     * @return all pairs shortest paths of the layer
+     * @throws IndexOutOfBoundsException unless 0 <= k < layers
+     */
+    public AllPairsShortestPaths layer(final int k) {
+        if (k < 0 || k >= layers) {
+            throw new IndexOutOfBoundsException("Layer " + k + " is not between 0 and " + (layers - 1));
+        }
+        return new Layer(k);
+    }
+
+    @SuppressWarnings("ReturnOfInnerClass")
+    private class Layer implements AllPairsShortestPaths {
+        private final int k;
+
+        private Layer(final int k) {
+            this.k = k;
+        }
+
+        @Override
+        public boolean hasPath(final int s, final int t) {
+            return distTo[s][t * layers + k] < Double.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public double dist(final int s, final int t) {
+            if (hasNegativeCycle) {
+                throw new UnsupportedOperationException(NEGATIVE_COST_CYCLE_EXISTS);
+            }
+            return distTo[s][t * layers + k];
+        }
+
+        @Override
+        public Iterable<DirectedEdge> path(final int s, final int t) {
+            if (hasNegativeCycle) {
+                throw new UnsupportedOperationException(NEGATIVE_COST_CYCLE_EXISTS);
+            }
+            if (!hasPath(s, t)) {
+                return null;
+            }
+            final Stack<DirectedEdge> path = new Stack<>();
+            for (DirectedEdge e = edgeTo[s][t * layers + k]; e != null; e = edgeTo[s][e.from() * layers + k]) {
+                path.push(e);
+            }
+            return path;
+        }
+    }
+}
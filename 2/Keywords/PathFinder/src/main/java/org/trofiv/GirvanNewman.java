@@ -0,0 +1,351 @@
+package org.trofiv;
+
+import java.util.*;
+
+/**
+ * Girvan-Newman community detection on an edge-weighted digraph. Edges with the highest edge betweenness are
+ * removed one by one, and the partition into weakly connected components with the best (directed) modularity seen
+ * during the process is kept.
+ * <p>
+ * Shortest paths never leave a weakly connected component, so after an edge is removed only the edges of the
+ * component that contained it need their betweenness recomputed; all other components keep their values.
+ * Edge weights are used as path lengths, like in {@link FloydWarshall}; self-loops and edges of infinite weight are
+ * ignored.
+ */
+@SuppressWarnings("WeakerAccess")
+public class GirvanNewman {
+    private static final double EPSILON = 1.0e-9;
+
+    private final int V;
+    private final List<DirectedEdge> edges = new ArrayList<>();
+    private final List<List<Integer>> outEdges;
+    private final List<List<Integer>> inEdges;
+    private final boolean[] removed;
+    private final double[] betweenness;
+    private final int[] component;
+
+    private int[] bestCommunity;
+    private int bestCommunities;
+    private double bestModularity = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Detects communities in the edge-weighted digraph.
+     *
+     * @param G the edge-weighted digraph
+     */
+    public GirvanNewman(final AdjMatrixEdgeWeightedDigraph G) {
+        this(G, true);
+    }
+
+    private GirvanNewman(final AdjMatrixEdgeWeightedDigraph G, final boolean detect) {
+        V = G.V();
+        outEdges = new ArrayList<>(V);
+        inEdges = new ArrayList<>(V);
+
+        for (int v = 0; v < V; v++) {
+            outEdges.add(new ArrayList<>());
+            inEdges.add(new ArrayList<>());
+        }
+
+        for (int v = 0; v < V; v++) {
+            for (DirectedEdge e : G.adj(v)) {
+                if (e.from() != e.to() && e.weight() < Double.POSITIVE_INFINITY) {
+                    outEdges.get(e.from()).add(edges.size());
+                    inEdges.get(e.to()).add(edges.size());
+                    edges.add(e);
+                }
+            }
+        }
+
+        removed = new boolean[edges.size()];
+        betweenness = new double[edges.size()];
+        component = new int[V];
+
+        final int components = initialize();
+        if (detect) {
+            detect(components);
+        }
+    }
+
+    // splits graph into weakly connected components and computes edge betweenness inside each of them
+    private int initialize() {
+        int components = 0;
+        Arrays.fill(component, -1);
+
+        for (int v = 0; v < V; v++) {
+            if (component[v] == -1) {
+                recompute(label(v, components++));
+            }
+        }
+
+        return components;
+    }
+
+    private void detect(final int initialComponents) {
+        int components = initialComponents;
+        updateBest(components);
+
+        for (int removedCount = 0; removedCount < edges.size(); removedCount++) {
+            final int edge = maxBetweennessEdge();
+            removed[edge] = true;
+            betweenness[edge] = 0;
+
+            // only the component which contained the edge can change
+            final int from = edges.get(edge).from();
+            final int to = edges.get(edge).to();
+            final int old = component[from];
+
+            for (int v = 0; v < V; v++) {
+                if (component[v] == old) {
+                    component[v] = -1;
+                }
+            }
+
+            recompute(label(from, old));
+            if (component[to] == -1) {
+                recompute(label(to, components++));
+                updateBest(components);
+            }
+        }
+
+        bestCommunity = renumbered();
+    }
+
+    // marks weakly connected component of the vertex, returns its vertices
+    private List<Integer> label(final int start, final int id) {
+        final List<Integer> vertices = new ArrayList<>();
+        final Deque<Integer> stack = new ArrayDeque<>();
+        component[start] = id;
+        stack.push(start);
+
+        while (!stack.isEmpty()) {
+            final int v = stack.pop();
+            vertices.add(v);
+
+            for (int e : outEdges.get(v)) {
+                visit(e, edges.get(e).to(), id, stack);
+            }
+            for (int e : inEdges.get(v)) {
+                visit(e, edges.get(e).from(), id, stack);
+            }
+        }
+
+        return vertices;
+    }
+
+    private void visit(final int edge, final int w, final int id, final Deque<Integer> stack) {
+        if (!removed[edge] && component[w] == -1) {
+            component[w] = id;
+            stack.push(w);
+        }
+    }
+
+    // Brandes' algorithm restricted to the vertices of one component
+    @SuppressWarnings({"OverlyComplexMethod", "OverlyLongMethod"})
+    private void recompute(final List<Integer> vertices) {
+        for (int v : vertices) {
+            for (int e : outEdges.get(v)) {
+                betweenness[e] = 0;
+            }
+        }
+
+        if (vertices.size() < 2) {
+            return;
+        }
+
+        final double[] distTo = new double[V];
+        final double[] sigma = new double[V];
+        final double[] dependency = new double[V];
+        final List<List<Integer>> predecessors = new ArrayList<>(V);
+        for (int v = 0; v < V; v++) {
+            predecessors.add(new ArrayList<>());
+        }
+
+        for (int source : vertices) {
+            for (int v : vertices) {
+                distTo[v] = Double.POSITIVE_INFINITY;
+                sigma[v] = 0;
+                dependency[v] = 0;
+                predecessors.get(v).clear();
+            }
+
+            distTo[source] = 0;
+            sigma[source] = 1;
+
+            final Deque<Integer> settled = new ArrayDeque<>();
+            final boolean[] done = new boolean[V];
+            final PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+            queue.add(new QueueEntry(source, 0));
+
+            while (!queue.isEmpty()) {
+                final int v = queue.poll().vertex;
+
+                if (done[v]) {
+                    continue;
+                }
+
+                done[v] = true;
+                settled.push(v);
+
+                for (int e : outEdges.get(v)) {
+                    if (removed[e]) {
+                        continue;
+                    }
+
+                    final int w = edges.get(e).to();
+                    final double dist = distTo[v] + edges.get(e).weight();
+
+                    if (dist < distTo[w] - EPSILON) {
+                        distTo[w] = dist;
+                        sigma[w] = sigma[v];
+                        predecessors.get(w).clear();
+                        predecessors.get(w).add(e);
+                        queue.add(new QueueEntry(w, dist));
+                    } else if (!done[w] && Math.abs(dist - distTo[w]) <= EPSILON) {
+                        sigma[w] += sigma[v];
+                        predecessors.get(w).add(e);
+                    }
+                }
+            }
+
+            while (!settled.isEmpty()) {
+                final int w = settled.pop();
+
+                for (int e : predecessors.get(w)) {
+                    final int v = edges.get(e).from();
+                    final double share = sigma[v] / sigma[w] * (1 + dependency[w]);
+                    betweenness[e] += share;
+                    dependency[v] += share;
+                }
+            }
+        }
+    }
+
+    private int maxBetweennessEdge() {
+        int best = -1;
+
+        for (int e = 0; e < edges.size(); e++) {
+            if (!removed[e] && (best == -1 || betweenness[e] > betweenness[best])) {
+                best = e;
+            }
+        }
+
+        return best;
+    }
+
+    private void updateBest(final int components) {
+        final double modularity = modularity(component, components);
+
+        if (modularity > bestModularity) {
+            bestModularity = modularity;
+            bestCommunity = component.clone();
+            bestCommunities = components;
+        }
+    }
+
+    // directed modularity of the partition on the original graph
+    private double modularity(final int[] partition, final int components) {
+        final double m = edges.size();
+
+        if (m == 0) {
+            return 0;
+        }
+
+        final double[] inside = new double[components];
+        final double[] out = new double[components];
+        final double[] in = new double[components];
+
+        for (DirectedEdge e : edges) {
+            out[partition[e.from()]]++;
+            in[partition[e.to()]]++;
+            if (partition[e.from()] == partition[e.to()]) {
+                inside[partition[e.from()]]++;
+            }
+        }
+
+        double modularity = 0;
+        for (int c = 0; c < components; c++) {
+            modularity += inside[c] / m - out[c] * in[c] / (m * m);
+        }
+
+        return modularity;
+    }
+
+    /**
+     * Returns community of the vertex in the best partition. Communities are numbered from zero in order of their
+     * smallest vertex.
+     *
+     * @param v the vertex
+     * @return community id
+     */
+    public int community(final int v) {
+        return bestCommunity[v];
+    }
+
+    /**
+     * Returns the number of communities in the best partition.
+     *
+     * @return the number of communities
+     */
+    public int communities() {
+        return bestCommunities;
+    }
+
+    /**
+     * Returns modularity of the best partition.
+     *
+     * @return modularity
+     */
+    public double modularity() {
+        return bestModularity;
+    }
+
+    /**
+     * Returns edge betweenness of the original graph, before any edge was removed.
+     *
+     * @param G the edge-weighted digraph
+     * @return map from edge to its betweenness
+     */
+    public static Map<DirectedEdge, Double> edgeBetweenness(final AdjMatrixEdgeWeightedDigraph G) {
+        final GirvanNewman girvanNewman = new GirvanNewman(G, false);
+        final Map<DirectedEdge, Double> result = new LinkedHashMap<>(girvanNewman.edges.size() * 2, 1);
+
+        for (int e = 0; e < girvanNewman.edges.size(); e++) {
+            result.put(girvanNewman.edges.get(e), girvanNewman.betweenness[e]);
+        }
+
+        return result;
+    }
+
+    private int[] renumbered() {
+        final int[] result = new int[V];
+        final Map<Integer, Integer> ids = new HashMap<>();
+
+        for (int v = 0; v < V; v++) {
+            final Integer id = ids.get(bestCommunity[v]);
+            if (id == null) {
+                ids.put(bestCommunity[v], ids.size());
+                result[v] = ids.size() - 1;
+            } else {
+                result[v] = id;
+            }
+        }
+
+        return result;
+    }
+
+    private static final class QueueEntry implements Comparable<QueueEntry> {
+        private final int vertex;
+        private final double dist;
+
+        private QueueEntry(final int vertex, final double dist) {
+            this.vertex = vertex;
+            this.dist = dist;
+        }
+
+        @Override
+        public int compareTo(final QueueEntry o) {
+            return Double.compare(dist, o.dist);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.trofiv;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads a social graph and its authors. Two formats are supported, chosen by the first line of the file:
+ * <ul>
+ * <li>dense matrix: header row of authors, then one row per author with weights to every other author and
+ * <tt>Integer.MAX_VALUE</tt> for missing edges;</li>
+ * <li>edge list: <tt>from&lt;TAB&gt;to&lt;TAB&gt;weight</tt> header, then one row per edge with vertex indices; authors
+ * are read from <tt>[name]_authors.[ext]</tt> next to the graph file, one per line, in vertex order.</li>
+ * </ul>
+ */
+@SuppressWarnings("InstanceVariableMayNotBeInitialized")
+class GraphWithAuthors {
+    private static final String FILE_MUST_CONTAINS_MORE_THAT_ONE_ROW = "File must contains more that one row!";
+    private static final List<String> EDGE_LIST_HEADER = Arrays.asList("from", "to", "weight");
+    private static final String AUTHORS_SUFFIX = "_authors";
+
+    private final Reader in;
+    private final File file;
+    private List<String> authors;
+    private AdjMatrixEdgeWeightedDigraph graph;
+
+    public GraphWithAuthors(final Reader in, final File file) {
+        this.in = in;
+        this.file = file;
+    }
+
+    public List<String> getAuthors() {
+        return authors;
+    }
+
+    public AdjMatrixEdgeWeightedDigraph getGraph() {
+        return graph;
+    }
+
+    public GraphWithAuthors invoke() throws IOException {
+        final Iterator<CSVRecord> it = CSVFormat.MYSQL.parse(in).iterator();
+
+        if (!it.hasNext()) {
+            throw new IllegalArgumentException(FILE_MUST_CONTAINS_MORE_THAT_ONE_ROW);
+        }
+
+        final CSVRecord firstLine = it.next();
+
+        if (firstLine.size() < 1) {
+            throw new IllegalArgumentException(FILE_MUST_CONTAINS_MORE_THAT_ONE_ROW);
+        }
+
+        final List<String> header = new ArrayList<>(firstLine.size());
+        firstLine.forEach(header::add);
+
+        if (EDGE_LIST_HEADER.equals(header)) {
+            readEdgeList(it);
+        } else {
+            readMatrix(firstLine, it);
+        }
+
+        return this;
+    }
+
+    private void readMatrix(final CSVRecord firstLine, final Iterator<CSVRecord> it) {
+        final Iterator<String> firstRowIt = firstLine.iterator();
+        firstRowIt.next();
+
+        authors = new ArrayList<>(firstLine.size());
+        while (firstRowIt.hasNext()) {
+            authors.add(firstRowIt.next());
+        }
+
+        graph = new AdjMatrixEdgeWeightedDigraph(authors.size());
+
+        int row = 0;
+        while (it.hasNext()) {
+            final Iterator<String> rowIt = it.next().iterator();
+            rowIt.next();
+
+            int column = 0;
+            while (rowIt.hasNext()) {
+                final double value = Double.valueOf(rowIt.next());
+
+                if (row == column) {
+                    graph.addEdge(new DirectedEdge(row, column, 0));
+                } else {
+                    addEdge(row, column, value);
+                }
+                column++;
+            }
+            row++;
+        }
+    }
+
+    private void readEdgeList(final Iterator<CSVRecord> it) throws IOException {
+        authors = readAuthors();
+        graph = new AdjMatrixEdgeWeightedDigraph(authors.size());
+
+        for (int v = 0; v < authors.size(); v++) {
+            graph.addEdge(new DirectedEdge(v, v, 0));
+        }
+
+        while (it.hasNext()) {
+            final CSVRecord record = it.next();
+
+            if (record.size() != EDGE_LIST_HEADER.size()) {
+                throw new IllegalArgumentException("Edge must have from, to and weight, line "
+                        + record.getRecordNumber());
+            }
+
+            final int from = Integer.parseInt(record.get(0));
+            final int to = Integer.parseInt(record.get(1));
+
+            if (from < 0 || from >= authors.size() || to < 0 || to >= authors.size()) {
+                throw new IllegalArgumentException("Unknown author index, line " + record.getRecordNumber());
+            }
+
+            if (from != to) {
+                addEdge(from, to, Double.valueOf(record.get(2)));
+            }
+        }
+    }
+
+    private List<String> readAuthors() throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("Edge list graph requires authors file!");
+        }
+
+        final List<String> result = new ArrayList<>();
+
+        //noinspection ImplicitDefaultCharsetUsage
+        try (Reader authorsIn = new FileReader(authorsFile(file))) {
+            for (CSVRecord record : CSVFormat.MYSQL.parse(authorsIn)) {
+                result.add(record.get(0));
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the authors file of an edge list graph, it may not exist.
+     *
+     * @param file graph file
+     * @return authors file
+     */
+    static File authorsFile(final File file) {
+        return new File(file.getParentFile(), FilenameUtils.getBaseName(file.getName())
+                + AUTHORS_SUFFIX + '.' + FilenameUtils.getExtension(file.getName()));
+    }
+
+    private void addEdge(final int from, final int to, final double value) {
+        if (value >= Integer.MAX_VALUE) {
+            graph.addEdge(new DirectedEdge(from, to, Double.POSITIVE_INFINITY));
+        } else {
+            graph.addEdge(new DirectedEdge(from, to, value));
+        }
+    }
+}
@@ -2,24 +2,69 @@ package org.trofiv;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.io.FilenameUtils;
 
 import java.io.*;
-import java.nio.file.Paths;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import static java.nio.file.StandardWatchEventKinds.*;
+
 @SuppressWarnings("ThrowCaughtLocally")
 public class Main {
     private static final String INPUT_DIRECTORIES_LOCATION = "../";
     private static final Pattern INPUT_FILES = Pattern.compile(".*_soc_graph.*normalized.tsv");
     private static final Pattern INPUT_DIRECTORIES = Pattern.compile("keywords.*");
-    private static final String FILE_MUST_CONTAINS_MORE_THAT_ONE_ROW = "File must contains more that one row!";
+    private static final Pattern OUTPUT_FILES = Pattern.compile("(betweenness|triangles|topk|communities)_.*");
+    private static final String FUSED_MODE = "--fused";
+    private static final String ORACLE_MODE = "--oracle";
+    private static final String QUERY_MODE = "--query";
+    private static final String TOP_K_MODE = "--top-k";
+    private static final String COMMUNITIES_MODE = "--communities";
+    private static final String PRECISION_MODE = "--precision";
+    private static final String SCALE_MODE = "--scale";
+    private static final String WATCH_MODE = "--watch";
+    private static final String MANIFEST = ".pathfinder_manifest";
+    private static final long QUIET_PERIOD_MS = 2000;
+    private static final double DEFAULT_SCALE = 1000;
+    private static final int DEFAULT_TOP_K = 50;
+    private static final double TOP_K_DELTA = 0.05;
+    private static final String CLEAN_GRAPH = "_soc_graph_clean_";
+    private static final String SENTIM_GRAPH = "_soc_graph_sentim_";
 
     @SuppressWarnings({"ImplicitDefaultCharsetUsage", "ConstantConditions"})
     public static void main(final String[] args) {
+        if (args.length > 0 && QUERY_MODE.equals(args[0])) {
+            queryOracle(args);
+            return;
+        }
+
+        final boolean fused = Arrays.asList(args).contains(FUSED_MODE);
+        final boolean oracle = Arrays.asList(args).contains(ORACLE_MODE);
+        final int topK = parseTopK(args);
+        final boolean communities = Arrays.asList(args).contains(COMMUNITIES_MODE);
+        final Function<AdjMatrixEdgeWeightedDigraph, AllPairsShortestPaths> shortestPaths = parsePrecision(args);
+
+        final Function<List<File>, Collection<File>> processor = files -> {
+            if (topK > 0) {
+                return processEach(files, file -> processFileTopK(file, topK));
+            } else if (communities) {
+                return processEach(files, Main::processFileCommunities);
+            } else if (oracle) {
+                return processEach(files, Main::buildOracle);
+            } else if (fused) {
+                return processFilesFused(files.toArray(new File[files.size()]), shortestPaths);
+            } else {
+                return processEach(files, file -> processFile(file, shortestPaths));
+            }
+        };
+
         try {
             final File workDirectory = Paths.get(INPUT_DIRECTORIES_LOCATION).toRealPath().toFile();
             final File[] keywordDirectories = workDirectory.listFiles(
@@ -29,19 +74,28 @@ public class Main {
                 throw new IllegalArgumentException("No one input directory found!");
             }
 
+            if (Arrays.asList(args).contains(WATCH_MODE)) {
+                final Manifest manifest = new Manifest(new File(workDirectory, MANIFEST), String.join(" ", args));
+                watch(keywordDirectories, processor, manifest, fused);
+                return;
+            }
+
+            // processing key -> first file with such content, graphs are the same in every keyword directory
+            final Map<String, File> processed = new HashMap<>();
+
             for (File dir : keywordDirectories) {
-                final File[] fileToProcess = dir.listFiles(
-                        path -> path.isFile() && INPUT_FILES.matcher(path.getName()).matches() &&
-                                !path.getName().contains("betweenness"));
+                final List<File> fileToProcess = inputFiles(dir);
 
-                if (fileToProcess.length == 0) {
+                if (fileToProcess.isEmpty()) {
                     throw new IllegalArgumentException("No one input file found!");
                 }
 
+                final Map<File, String> hashes = new LinkedHashMap<>();
                 for (File file : fileToProcess) {
-                    processFile(file);
+                    hashes.put(file, Manifest.contentHash(file));
                 }
 
+                process(hashes, processed, processor, fused);
             }
         } catch (IOException e) {
             System.out.println("Can't access working directory or missing social graph files");
@@ -49,45 +103,551 @@ public class Main {
         }
     }
 
-    private static void processFile(final File file) {
-        final String fileName = FilenameUtils.getBaseName(file.toString());
-        final String extension = FilenameUtils.getExtension(file.toString());
+    @SuppressWarnings("ConstantConditions")
+    private static List<File> inputFiles(final File dir) {
+        return Arrays.asList(dir.listFiles(path -> path.isFile() && isInputFile(path)));
+    }
+
+    private static boolean isInputFile(final File file) {
+        return INPUT_FILES.matcher(file.getName()).matches() && !OUTPUT_FILES.matcher(file.getName()).matches();
+    }
+
+    // files of the list the processing succeeded for
+    private static Collection<File> processEach(final List<File> files, final Predicate<File> processing) {
+        return files.stream().filter(processing).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns key of the outputs of the graph file: sentiment graphs are processed differently, so their outputs
+     * differ from ones of a clean graph with the same content.
+     *
+     * @param file graph file
+     * @param hash content hash of the file
+     * @return processing key
+     */
+    private static String processingKey(final File file, final String hash) {
+        return (file.getName().contains("sentim") ? "sentim:" : "clean:") + hash;
+    }
+
+    /**
+     * Processes graph files with their content hashes. Only the first file with given content and processing is
+     * processed, outputs of the others are copied from it if it succeeded.
+     *
+     * @param hashes    graph files with their content hashes
+     * @param processed processing key to the first processed file with such key, updated
+     * @param processor computes outputs of the files and returns ones it succeeded for
+     * @param fused     keep clean and sentiment variants of a graph together, so that they can be fused
+     * @return files which have outputs now
+     */
+    private static Collection<File> process(
+            final Map<File, String> hashes,
+            final Map<String, File> processed,
+            final Function<List<File>, Collection<File>> processor,
+            final boolean fused) throws IOException {
+        final Map<File, File> duplicates = new LinkedHashMap<>();
+        final List<File> unique = new ArrayList<>(hashes.size());
+
+        for (Map.Entry<File, String> entry : hashes.entrySet()) {
+            final String key = processingKey(entry.getKey(), entry.getValue());
+            final File original = processed.putIfAbsent(key, entry.getKey());
+            if (original == null) {
+                unique.add(entry.getKey());
+            } else {
+                duplicates.put(entry.getKey(), original);
+            }
+        }
+
+        if (fused) {
+            // a duplicate variant is processed again rather than its counterpart alone
+            for (File file : new ArrayList<>(unique)) {
+                final File counterpart = new File(file.getParentFile(), file.getName().contains(CLEAN_GRAPH)
+                        ? file.getName().replace(CLEAN_GRAPH, SENTIM_GRAPH)
+                        : file.getName().replace(SENTIM_GRAPH, CLEAN_GRAPH));
+                if (duplicates.remove(counterpart) != null) {
+                    unique.add(counterpart);
+                }
+            }
+        }
+
+        final Collection<File> result = new HashSet<>(processor.apply(unique));
+
+        // outputs of failed files are missing or stale, the next file with such content is processed instead
+        final Collection<File> failed = new HashSet<>(unique);
+        failed.removeAll(result);
+        processed.values().removeAll(failed);
+
+        for (Map.Entry<File, File> duplicate : duplicates.entrySet()) {
+            if (failed.contains(duplicate.getValue())) {
+                System.out.println("Can't copy outputs of " + duplicate.getValue() + " to " + duplicate.getKey()
+                        + ", it wasn't processed");
+            } else {
+                copyOutputs(duplicate.getValue(), duplicate.getKey());
+                result.add(duplicate.getKey());
+            }
+        }
 
+        return result;
+    }
+
+    /**
+     * Keeps outputs up to date with the graph files: first processes files changed since the manifest was written,
+     * then waits for changes in the keyword directories and processes only changed files. Several events in a row are
+     * batched until directories are quiet for {@link #QUIET_PERIOD_MS}, as files are written in chunks.
+     * <p>
+     * A file which can't be processed, e.g. because it's still being written, is reported and left changed in the
+     * manifest, so that it's processed again with the next change. Deleted files are dropped from the manifest.
+     *
+     * @param keywordDirectories directories to watch
+     * @param processor          computes outputs of the files and returns ones it succeeded for
+     * @param manifest           processed files
+     * @param fused              keep clean and sentiment variants of a graph together
+     */
+    @SuppressWarnings("InfiniteLoopStatement")
+    private static void watch(
+            final File[] keywordDirectories,
+            final Function<List<File>, Collection<File>> processor,
+            final Manifest manifest,
+            final boolean fused) throws IOException {
+        final Map<String, File> processed = new HashMap<>();
+        final Collection<File> candidates = new LinkedHashSet<>();
+        final Collection<File> failed = new LinkedHashSet<>();
+
+        for (File dir : keywordDirectories) {
+            candidates.addAll(inputFiles(dir));
+        }
+
+        // files deleted since the manifest was written
+        manifest.retainAll(candidates);
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            final Map<WatchKey, File> keys = new HashMap<>();
+            for (File dir : keywordDirectories) {
+                keys.put(dir.toPath().register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+            }
+
+            while (true) {
+                final Map<File, String> changed = new LinkedHashMap<>();
+
+                for (File file : candidates) {
+                    if (!file.isFile()) {
+                        manifest.remove(file);
+                        processed.values().remove(file);
+                        continue;
+                    }
+                    final String hash = manifest.hash(file);
+                    if (manifest.isChanged(file, hash) || outputs(file).length == 0) {
+                        changed.put(file, hash);
+                    } else {
+                        // only touched, remember new time not to hash it again
+                        manifest.update(file, hash);
+                        processed.putIfAbsent(processingKey(file, hash), file);
+                    }
+                }
+
+                failed.clear();
+
+                if (!changed.isEmpty()) {
+                    // old content of changed files has gone
+                    processed.values().removeAll(changed.keySet());
+
+                    // clean and sentiment variants of a graph go together, so that they are still fused
+                    final Map<File, Map<File, String>> units = new LinkedHashMap<>();
+                    changed.forEach((file, hash) -> units.computeIfAbsent(
+                            new File(file.getParentFile(), file.getName().replace(SENTIM_GRAPH, CLEAN_GRAPH)),
+                            unit -> new LinkedHashMap<>()).put(file, hash));
+
+                    for (Map<File, String> unit : units.values()) {
+                        try {
+                            final Collection<File> done = process(unit, processed, processor, fused);
+                            unit.forEach((file, hash) -> {
+                                if (done.contains(file)) {
+                                    manifest.update(file, hash);
+                                } else {
+                                    failed.add(file);
+                                }
+                            });
+                        } catch (IOException | RuntimeException e) {
+                            System.out.println("Can't process " + unit.keySet() + ", will retry on next change");
+                            System.out.println(e);
+                            processed.values().removeAll(unit.keySet());
+                            failed.addAll(unit.keySet());
+                        }
+                    }
+
+                    System.out.println(changed.size() - failed.size() + " changed files processed, "
+                            + failed.size() + " failed");
+                }
+
+                manifest.save();
+
+                candidates.clear();
+                candidates.addAll(failed);
+                for (WatchKey key = watchService.take(); key != null;
+                     key = watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS)) {
+                    final File dir = keys.get(key);
+
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            candidates.addAll(inputFiles(dir));
+                        } else {
+                            final File file = new File(dir, event.context().toString());
+                            if (event.kind() == ENTRY_DELETE && isInputFile(file)) {
+                                candidates.add(file);
+                            }
+                            for (File input : inputFiles(dir)) {
+                                if (input.equals(file) || GraphWithAuthors.authorsFile(input).equals(file)) {
+                                    candidates.add(input);
+                                }
+                            }
+                        }
+                    }
+
+                    key.reset();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Copies outputs computed for the graph file to another file with the same content, renaming them after it.
+     *
+     * @param original processed graph file
+     * @param copy     graph file with the same content
+     */
+    private static void copyOutputs(final File original, final File copy) throws IOException {
+        final String originalBase = FilenameUtils.getBaseName(original.getName());
+        final String copyBase = FilenameUtils.getBaseName(copy.getName());
+        final File[] outputs = outputs(original);
+
+        for (File output : outputs) {
+            final String name = output.getName();
+            final String copyName = name.substring(0, name.lastIndexOf(originalBase)) + copyBase
+                    + name.substring(name.lastIndexOf(originalBase) + originalBase.length());
+            Files.copy(output.toPath(), new File(copy.getParentFile(), copyName).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        System.out.println(copy + ": same as " + original + ", " + outputs.length + " outputs copied");
+    }
+
+    // output files computed for the graph file
+    @SuppressWarnings("ConstantConditions")
+    private static File[] outputs(final File file) {
+        final String base = FilenameUtils.getBaseName(file.getName());
+        return file.getParentFile().listFiles(
+                path -> path.isFile() && path.getName().endsWith('_' + file.getName()) &&
+                        OUTPUT_FILES.matcher(path.getName()).matches() ||
+                        path.getName().equals("oracle_" + base + ".bin"));
+    }
+
+    // returns k for --top-k [k], zero if the mode is off
+    private static int parseTopK(final String[] args) {
+        final int index = Arrays.asList(args).indexOf(TOP_K_MODE);
+
+        if (index < 0) {
+            return 0;
+        }
+
+        return index + 1 < args.length && args[index + 1].matches("\\d+")
+                ? Integer.parseInt(args[index + 1])
+                : DEFAULT_TOP_K;
+    }
+
+    // returns all pairs shortest paths of --precision double|float|int|short [--scale s], plain Floyd-Warshall if off
+    private static Function<AdjMatrixEdgeWeightedDigraph, AllPairsShortestPaths> parsePrecision(final String[] args) {
+        final int index = Arrays.asList(args).indexOf(PRECISION_MODE);
+
+        if (index < 0 || index + 1 >= args.length) {
+            return FloydWarshall::new;
+        }
+
+        final CompactFloydWarshall.Precision precision =
+                CompactFloydWarshall.Precision.valueOf(args[index + 1].toUpperCase(Locale.ENGLISH));
+        final int scaleIndex = Arrays.asList(args).indexOf(SCALE_MODE);
+        final double scale = scaleIndex >= 0 && scaleIndex + 1 < args.length
+                ? Double.parseDouble(args[scaleIndex + 1])
+                : DEFAULT_SCALE;
+
+        return graph -> new CompactFloydWarshall(graph, precision, scale);
+    }
+
+    private static boolean processFile(
+            final File file,
+            final Function<AdjMatrixEdgeWeightedDigraph, AllPairsShortestPaths> shortestPaths) {
         //noinspection ImplicitDefaultCharsetUsage
-        try (Reader in = new FileReader(file);
-             CSVPrinter out = CSVFormat.MYSQL.print(
-                     new PrintWriter(file.getParent() + File.separator + "betweenness_" + fileName + '.' + extension))) {
-            final GraphWithAuthors graphWithAuthors = new GraphWithAuthors(in).invoke();
+        try (Reader in = new FileReader(file)) {
+            final GraphWithAuthors graphWithAuthors = new GraphWithAuthors(in, file).invoke();
             final AdjMatrixEdgeWeightedDigraph graph = graphWithAuthors.getGraph();
             final List<String> authors = graphWithAuthors.getAuthors();
 
-            final FloydWarshall floydWarshall = new FloydWarshall(graph);
+            final AllPairsShortestPaths floydWarshall = shortestPaths.apply(graph);
 
             if (file.getName().contains("sentim")) {
                 final Map<Integer, Double> betweenness = new LinkedHashMap<>(authors.size(), 1);
                 IntStream.range(0, authors.size()).forEach(i -> betweenness.put(i, 0.0));
                 calculateBetweennessSent(floydWarshall, betweenness);
-
-                for (int i = 0; i < authors.size(); i++) {
-                    out.printRecord(authors.get(i), betweenness.get(i));
-                }
+                printBetweenness(file, authors, betweenness);
             } else {
                 final Map<Integer, Integer> betweenness = new LinkedHashMap<>(authors.size(), 1);
                 IntStream.range(0, authors.size()).forEach(i -> betweenness.put(i, 0));
                 calculateBetweenness(floydWarshall, betweenness);
+                printBetweenness(file, authors, betweenness);
+                printTriangles(file, authors, new TriangleCounter(graph));
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Can't process graph file!");
+            System.out.println(e.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Processes clean and sentiment variants of the same social graph in one pass: both files share the authors
+     * header and edge topology, so their weights are relaxed together by {@link FusedFloydWarshall}. Files without a
+     * matching counterpart are processed one by one.
+     *
+     * @param files         graph files of a single directory
+     * @param shortestPaths all pairs shortest paths for files without counterpart
+     * @return files the processing succeeded for
+     */
+    private static Collection<File> processFilesFused(
+            final File[] files,
+            final Function<AdjMatrixEdgeWeightedDigraph, AllPairsShortestPaths> shortestPaths) {
+        final Collection<File> pending = new LinkedHashSet<>(Arrays.asList(files));
+        final Collection<File> result = new ArrayList<>(files.length);
+
+        for (File clean : files) {
+            if (!clean.getName().contains(CLEAN_GRAPH)) {
+                continue;
+            }
 
-                for (int i = 0; i < authors.size(); i++) {
-                    out.printRecord(authors.get(i), betweenness.get(i));
+            final File sentim = new File(clean.getParentFile(), clean.getName().replace(CLEAN_GRAPH, SENTIM_GRAPH));
+
+            if (pending.contains(sentim)) {
+                if (processFusedFiles(clean, sentim)) {
+                    result.add(clean);
+                    result.add(sentim);
                 }
+                pending.remove(clean);
+                pending.remove(sentim);
+            }
+        }
+
+        result.addAll(processEach(new ArrayList<>(pending), file -> processFile(file, shortestPaths)));
+        return result;
+    }
+
+    private static boolean processFusedFiles(final File clean, final File sentim) {
+        //noinspection ImplicitDefaultCharsetUsage
+        try (Reader cleanIn = new FileReader(clean);
+             Reader sentimIn = new FileReader(sentim)) {
+            final GraphWithAuthors cleanGraph = new GraphWithAuthors(cleanIn, clean).invoke();
+            final GraphWithAuthors sentimGraph = new GraphWithAuthors(sentimIn, sentim).invoke();
+            final List<String> authors = cleanGraph.getAuthors();
+
+            if (!authors.equals(sentimGraph.getAuthors())) {
+                throw new IllegalArgumentException("Clean and sentiment graphs must have the same authors!");
+            }
+
+            final FusedFloydWarshall floydWarshall =
+                    new FusedFloydWarshall(cleanGraph.getGraph(), sentimGraph.getGraph());
+
+            final Map<Integer, Integer> betweenness = new LinkedHashMap<>(authors.size(), 1);
+            IntStream.range(0, authors.size()).forEach(i -> betweenness.put(i, 0));
+            calculateBetweenness(floydWarshall.layer(0), betweenness);
+            printBetweenness(clean, authors, betweenness);
+            printTriangles(clean, authors, new TriangleCounter(cleanGraph.getGraph()));
+
+            final Map<Integer, Double> betweennessSent = new LinkedHashMap<>(authors.size(), 1);
+            IntStream.range(0, authors.size()).forEach(i -> betweennessSent.put(i, 0.0));
+            calculateBetweennessSent(floydWarshall.layer(1), betweennessSent);
+            printBetweenness(sentim, authors, betweennessSent);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Can't process graph files!");
+            System.out.println(e.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes only the <tt>k</tt> authors with the highest betweenness as <tt>topk_[name]</tt>, with bounds
+     * of the confidence interval, using {@link TopKBetweenness} instead of all pairs shortest paths.
+     *
+     * @param file graph file
+     * @param k    number of authors
+     * @return whether the output is written
+     */
+    private static boolean processFileTopK(final File file, final int k) {
+        final String fileName = FilenameUtils.getBaseName(file.toString());
+        final String extension = FilenameUtils.getExtension(file.toString());
+
+        //noinspection ImplicitDefaultCharsetUsage
+        try (Reader in = new FileReader(file);
+             CSVPrinter out = CSVFormat.MYSQL.print(new PrintWriter(
+                     file.getParent() + File.separator + "topk_" + fileName + '.' + extension))) {
+            final GraphWithAuthors graphWithAuthors = new GraphWithAuthors(in, file).invoke();
+            final List<String> authors = graphWithAuthors.getAuthors();
+            final TopKBetweenness topKBetweenness = new TopKBetweenness(
+                    graphWithAuthors.getGraph(), k, file.getName().contains("sentim"), TOP_K_DELTA);
+
+            System.out.println(file.getName() + ": " + topKBetweenness.samples() + " of " + authors.size()
+                    + " sources sampled, " + (topKBetweenness.isCertified() ? "certified" : "not certified"));
+
+            for (TopKBetweenness.Estimate estimate : topKBetweenness.top()) {
+                out.printRecord(authors.get(estimate.getVertex()), estimate.getValue(),
+                        estimate.getLower(), estimate.getUpper());
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Can't process graph file!");
+            System.out.println(e.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Detects author communities with Girvan-Newman and writes them as <tt>communities_[name]</tt>: author and
+     * community id of the partition with the best modularity.
+     *
+     * @param file graph file
+     * @return whether the output is written
+     */
+    private static boolean processFileCommunities(final File file) {
+        final String fileName = FilenameUtils.getBaseName(file.toString());
+        final String extension = FilenameUtils.getExtension(file.toString());
+
+        //noinspection ImplicitDefaultCharsetUsage
+        try (Reader in = new FileReader(file);
+             CSVPrinter out = CSVFormat.MYSQL.print(new PrintWriter(
+                     file.getParent() + File.separator + "communities_" + fileName + '.' + extension))) {
+            final GraphWithAuthors graphWithAuthors = new GraphWithAuthors(in, file).invoke();
+            final List<String> authors = graphWithAuthors.getAuthors();
+            final GirvanNewman girvanNewman = new GirvanNewman(graphWithAuthors.getGraph());
+
+            System.out.println(file.getName() + ": " + girvanNewman.communities() + " communities, modularity "
+                    + girvanNewman.modularity());
+
+            for (int i = 0; i < authors.size(); i++) {
+                out.printRecord(authors.get(i), girvanNewman.community(i));
             }
+            return true;
         } catch (IOException e) {
             System.out.println("Can't process graph file!");
             System.out.println(e.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Builds pruned landmark labelling index for the graph file and saves it as <tt>oracle_[name].bin</tt> next to
+     * it, to be queried later with <tt>--query</tt>.
+     *
+     * @param file graph file
+     * @return whether the index is saved
+     */
+    private static boolean buildOracle(final File file) {
+        final String fileName = FilenameUtils.getBaseName(file.toString());
+
+        //noinspection ImplicitDefaultCharsetUsage
+        try (Reader in = new FileReader(file)) {
+            final GraphWithAuthors graphWithAuthors = new GraphWithAuthors(in, file).invoke();
+            final DistanceOracle distanceOracle =
+                    DistanceOracle.build(graphWithAuthors.getGraph(), graphWithAuthors.getAuthors());
+            distanceOracle.save(new File(file.getParent(), "oracle_" + fileName + ".bin"));
+            return true;
+        } catch (IOException e) {
+            System.out.println("Can't build distance oracle!");
+            System.out.println(e.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Answers author-to-author queries: <tt>--query index.bin authorA authorB [authorC authorD ...]</tt>.
+     *
+     * @param args command line arguments
+     */
+    private static void queryOracle(final String[] args) {
+        if (args.length < 4 || args.length % 2 != 0) {
+            throw new IllegalArgumentException("Usage: --query index.bin authorA authorB [authorC authorD ...]");
+        }
+
+        try {
+            final DistanceOracle distanceOracle = DistanceOracle.load(new File(args[1]));
+            final List<String> authors = distanceOracle.getAuthors();
+
+            for (int i = 2; i < args.length; i += 2) {
+                final int from = distanceOracle.vertex(args[i]);
+                final int to = distanceOracle.vertex(args[i + 1]);
+
+                final long start = System.nanoTime();
+                final double dist = distanceOracle.dist(from, to);
+                final long elapsed = System.nanoTime() - start;
+
+                System.out.println(args[i] + " -> " + args[i + 1] + ": " + dist
+                        + " (" + elapsed / 1000.0 + " us)");
+
+                final Iterable<DirectedEdge> path = distanceOracle.path(from, to);
+
+                if (path != null) {
+                    final List<DirectedEdge> edges = new ArrayList<>((Stack<DirectedEdge>) path);
+                    Collections.reverse(edges);
+
+                    final StringBuilder text = new StringBuilder(authors.get(from));
+                    for (DirectedEdge edge : edges) {
+                        text.append(" -> ").append(authors.get(edge.to()));
+                    }
+                    System.out.println("    " + text);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Can't read distance oracle!");
+            System.out.println(e.getLocalizedMessage());
+        }
+    }
+
+    private static void printBetweenness(
+            final File file,
+            final List<String> authors,
+            final Map<Integer, ? extends Number> betweenness) throws IOException {
+        final String fileName = FilenameUtils.getBaseName(file.toString());
+        final String extension = FilenameUtils.getExtension(file.toString());
+
+        //noinspection ImplicitDefaultCharsetUsage
+        try (CSVPrinter out = CSVFormat.MYSQL.print(
+                new PrintWriter(file.getParent() + File.separator + "betweenness_" + fileName + '.' + extension))) {
+            for (int i = 0; i < authors.size(); i++) {
+                out.printRecord(authors.get(i), betweenness.get(i));
+            }
+        }
+    }
+
+    /**
+     * Writes triangle counts and local clustering coefficients as <tt>triangles_[name]</tt>. Clean and sentiment
+     * graphs share the edge topology, so it's done for clean graphs only.
+     */
+    private static void printTriangles(
+            final File file,
+            final List<String> authors,
+            final TriangleCounter triangleCounter) throws IOException {
+        final String fileName = FilenameUtils.getBaseName(file.toString());
+        final String extension = FilenameUtils.getExtension(file.toString());
+
+        //noinspection ImplicitDefaultCharsetUsage
+        try (CSVPrinter out = CSVFormat.MYSQL.print(
+                new PrintWriter(file.getParent() + File.separator + "triangles_" + fileName + '.' + extension))) {
+            for (int i = 0; i < authors.size(); i++) {
+                out.printRecord(authors.get(i), triangleCounter.triangles(i), triangleCounter.clusteringCoefficient(i));
+            }
         }
     }
 
     private static void calculateBetweenness(
-            final FloydWarshall floydWarshall,
+            final AllPairsShortestPaths floydWarshall,
             final Map<Integer, Integer> betweenness) {
         for (int from = 0; from < betweenness.size(); from++) {
             for (int to = 0; to < betweenness.size(); to++) {
@@ -112,7 +672,7 @@ public class Main {
     }
 
     private static void calculateBetweennessSent(
-            final FloydWarshall floydWarshall,
+            final AllPairsShortestPaths floydWarshall,
             final Map<Integer, Double> betweenness) {
         for (int from = 0; from < betweenness.size(); from++) {
             for (int to = 0; to < betweenness.size(); to++) {
@@ -132,72 +692,4 @@ public class Main {
             }
         }
     }
-
-    @SuppressWarnings("InstanceVariableMayNotBeInitialized")
-    private static class GraphWithAuthors {
-        private final Reader in;
-        private List<String> authors;
-        private AdjMatrixEdgeWeightedDigraph graph;
-
-        public GraphWithAuthors(final Reader in) {
-            this.in = in;
-        }
-
-        public List<String> getAuthors() {
-            return authors;
-        }
-
-        public AdjMatrixEdgeWeightedDigraph getGraph() {
-            return graph;
-        }
-
-        public GraphWithAuthors invoke() throws IOException {
-            final List<CSVRecord> records = CSVFormat.MYSQL.parse(in).getRecords();
-
-            if (records.size() < 1) {
-                throw new IllegalArgumentException(FILE_MUST_CONTAINS_MORE_THAT_ONE_ROW);
-            }
-
-            final Iterator<CSVRecord> it = records.iterator();
-            final CSVRecord firstLine = it.next();
-
-            if (firstLine.size() < 1) {
-                throw new IllegalArgumentException(FILE_MUST_CONTAINS_MORE_THAT_ONE_ROW);
-            }
-
-            final Iterator<String> firstRowIt = firstLine.iterator();
-            firstRowIt.next();
-
-            authors = new ArrayList<>(firstLine.size());
-            while (firstRowIt.hasNext()) {
-                authors.add(firstRowIt.next());
-            }
-
-            graph = new AdjMatrixEdgeWeightedDigraph(authors.size());
-
-            int row = 0;
-            while (it.hasNext()) {
-                final Iterator<String> rowIt = it.next().iterator();
-                rowIt.next();
-
-                int column = 0;
-                while (rowIt.hasNext()) {
-                    final double value = Double.valueOf(rowIt.next());
-
-                    if (row == column) {
-                        graph.addEdge(new DirectedEdge(row, column, 0));
-                    } else {
-                        if (value >= Integer.MAX_VALUE) {
-                            graph.addEdge(new DirectedEdge(row, column, Double.POSITIVE_INFINITY));
-                        } else {
-                            graph.addEdge(new DirectedEdge(row, column, value));
-                        }
-                    }
-                    column++;
-                }
-                row++;
-            }
-            return this;
-        }
-    }
 }
\ No newline at end of file
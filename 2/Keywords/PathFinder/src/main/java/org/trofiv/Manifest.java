@@ -0,0 +1,163 @@
+package org.trofiv;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * On-disk record of processed graph files: modification time and content hash of every input at the moment its
+ * outputs were computed. The first line holds the mode (command line) the outputs were computed with; a manifest of
+ * another mode is ignored, as its outputs are different.
+ * <p>
+ * A file whose modification time matches the record is not read at all; otherwise it's hashed, and only a different
+ * hash means it has to be processed again.
+ */
+class Manifest {
+    private final File file;
+    private final String mode;
+    private final Map<File, Entry> entries = new HashMap<>();
+
+    /**
+     * Loads the manifest if it exists and was written for the same mode.
+     *
+     * @param file manifest file
+     * @param mode mode signature
+     */
+    Manifest(final File file, final String mode) throws IOException {
+        this.file = file;
+        this.mode = mode;
+
+        if (!file.isFile()) {
+            return;
+        }
+
+        //noinspection ImplicitDefaultCharsetUsage
+        try (Reader in = new FileReader(file)) {
+            final Iterator<CSVRecord> it = CSVFormat.MYSQL.parse(in).iterator();
+
+            if (!it.hasNext() || !mode.equals(it.next().get(0))) {
+                return;
+            }
+
+            while (it.hasNext()) {
+                final CSVRecord record = it.next();
+                entries.put(new File(record.get(0)), new Entry(Long.parseLong(record.get(1)), record.get(2)));
+            }
+        }
+    }
+
+    /**
+     * Returns content hash of the graph file, recorded one if the file wasn't modified since.
+     *
+     * @param input graph file
+     * @return content hash
+     */
+    String hash(final File input) throws IOException {
+        final Entry entry = entries.get(input);
+        return entry != null && entry.lastModified == lastModified(input) ? entry.hash : contentHash(input);
+    }
+
+    /**
+     * Were outputs of the graph file computed for other content?
+     *
+     * @param input graph file
+     * @param hash  current content hash
+     * @return <tt>true</tt> if file is unknown or its content has changed
+     */
+    boolean isChanged(final File input, final String hash) {
+        final Entry entry = entries.get(input);
+        return entry == null || !entry.hash.equals(hash);
+    }
+
+    /**
+     * Records that outputs of the graph file are computed for its current content.
+     *
+     * @param input graph file
+     * @param hash  current content hash
+     */
+    void update(final File input, final String hash) {
+        entries.put(input, new Entry(lastModified(input), hash));
+    }
+
+    /**
+     * Forgets the graph file, e.g. because it was deleted.
+     *
+     * @param input graph file
+     */
+    void remove(final File input) {
+        entries.remove(input);
+    }
+
+    /**
+     * Forgets graph files other than the given ones.
+     *
+     * @param inputs graph files to keep
+     */
+    void retainAll(final Collection<File> inputs) {
+        entries.keySet().retainAll(inputs);
+    }
+
+    void save() throws IOException {
+        //noinspection ImplicitDefaultCharsetUsage
+        try (CSVPrinter out = CSVFormat.MYSQL.print(new PrintWriter(file))) {
+            out.printRecord(mode);
+            for (Map.Entry<File, Entry> entry : entries.entrySet()) {
+                out.printRecord(entry.getKey(), entry.getValue().lastModified, entry.getValue().hash);
+            }
+        }
+    }
+
+    /**
+     * Returns SHA-256 of the graph file and of its authors file if there is one.
+     *
+     * @param input graph file
+     * @return hex content hash
+     */
+    static String contentHash(final File input) throws IOException {
+        final MessageDigest digest;
+
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final byte[] buffer = new byte[1 << 16];
+        for (File part : Arrays.asList(input, GraphWithAuthors.authorsFile(input))) {
+            if (!part.isFile()) {
+                continue;
+            }
+            try (InputStream in = new FileInputStream(part)) {
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+        }
+
+        return new BigInteger(1, digest.digest()).toString(16);
+    }
+
+    private static long lastModified(final File input) {
+        return Math.max(input.lastModified(), GraphWithAuthors.authorsFile(input).lastModified());
+    }
+
+    private static final class Entry {
+        private final long lastModified;
+        private final String hash;
+
+        private Entry(final long lastModified, final String hash) {
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package org.trofiv;
+
+import java.util.*;
+
+/**
+ * Finds the <tt>k</tt> authors with the highest betweenness without solving all pairs shortest paths.
+ * <p>
+ * Betweenness of a vertex is the sum of per-source contributions, and the contribution of a single source is
+ * computed from its shortest path tree in one Dijkstra run. Sources are sampled without replacement in rounds of
+ * doubling size; after each round every vertex gets an empirical Bernstein confidence interval, and sampling stops
+ * as soon as the lower bound of each of the top <tt>k</tt> estimates is not below the upper bound of every other
+ * vertex. If that never happens all sources get sampled and the result is exact.
+ * <p>
+ * Contributions follow {@link Main}: in the clean graph each shortest path adds one to every vertex on it, in the
+ * sentiment graph each edge adds its weight to both of its ends. Per-source contributions of the sentiment graph have
+ * no a priori bound, so the largest contribution seen so far is used as the range of the interval.
+ */
+@SuppressWarnings("WeakerAccess")
+public class TopKBetweenness {
+    private static final int INITIAL_SAMPLE_SIZE = 16;
+
+    private final int V;
+    private final int k;
+    private final boolean weighted;
+    private final double delta;
+    private final List<List<DirectedEdge>> adj;
+
+    private final double[] sum;
+    private final double[] sumSquared;
+    private double range;
+    private int samples;
+    private boolean certified;
+    private List<Estimate> top;
+
+    /**
+     * Computes top <tt>k</tt> betweenness estimates.
+     *
+     * @param G        the edge-weighted digraph
+     * @param k        number of vertices to find
+     * @param weighted <tt>true</tt> for sentiment betweenness, <tt>false</tt> for path counting one
+     * @param delta    probability that any of the confidence intervals fails
+     * @throws IllegalArgumentException if <tt>k</tt> is not positive or <tt>delta</tt> is not in (0, 1)
+     */
+    public TopKBetweenness(final AdjMatrixEdgeWeightedDigraph G, final int k, final boolean weighted, final double delta) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        if (delta <= 0 || delta >= 1) {
+            throw new IllegalArgumentException("Delta must be between 0 and 1");
+        }
+
+        this.V = G.V();
+        this.k = Math.min(k, V);
+        this.weighted = weighted;
+        this.delta = delta;
+        this.sum = new double[V];
+        this.sumSquared = new double[V];
+        this.range = weighted ? 0 : Math.max(1, V - 1);
+        this.adj = new ArrayList<>(V);
+
+        for (int v = 0; v < V; v++) {
+            final List<DirectedEdge> edges = new ArrayList<>();
+            for (DirectedEdge e : G.adj(v)) {
+                if (e.from() != e.to() && e.weight() < Double.POSITIVE_INFINITY) {
+                    edges.add(e);
+                }
+            }
+            adj.add(edges);
+        }
+
+        run();
+    }
+
+    private void run() {
+        final int[] sources = new int[V];
+        for (int v = 0; v < V; v++) {
+            sources[v] = v;
+        }
+        StdRandom.shuffle(sources);
+
+        // union bound over vertices, both tails and all rounds
+        int rounds = 1;
+        for (int n = Math.min(INITIAL_SAMPLE_SIZE, V); n < V; n *= 2) {
+            rounds++;
+        }
+        final double log = Math.log(2.0 * V * rounds / delta);
+
+        final double[] contribution = new double[V];
+        int next = Math.min(INITIAL_SAMPLE_SIZE, V);
+
+        while (true) {
+            for (; samples < next; samples++) {
+                Arrays.fill(contribution, 0);
+                accumulate(sources[samples], contribution);
+
+                for (int v = 0; v < V; v++) {
+                    sum[v] += contribution[v];
+                    sumSquared[v] += contribution[v] * contribution[v];
+                    if (weighted) {
+                        range = Math.max(range, contribution[v]);
+                    }
+                }
+            }
+
+            top = estimate(log);
+
+            if (certified || samples == V) {
+                certified = true;
+                return;
+            }
+
+            next = Math.min(V, next * 2);
+        }
+    }
+
+    // adds contribution of a single source: one Dijkstra run plus subtree sizes of the shortest path tree
+    private void accumulate(final int source, final double[] contribution) {
+        final double[] distTo = new double[V];
+        final DirectedEdge[] edgeTo = new DirectedEdge[V];
+        final int[] settled = new int[V];
+        final boolean[] done = new boolean[V];
+        int settledCount = 0;
+
+        Arrays.fill(distTo, Double.POSITIVE_INFINITY);
+        distTo[source] = 0;
+
+        final PriorityQueue<QueueEntry> queue = new PriorityQueue<>();
+        queue.add(new QueueEntry(source, 0));
+
+        while (!queue.isEmpty()) {
+            final int v = queue.poll().vertex;
+
+            if (done[v]) {
+                continue;
+            }
+
+            done[v] = true;
+            settled[settledCount++] = v;
+
+            for (DirectedEdge e : adj.get(v)) {
+                final int w = e.to();
+                if (distTo[w] > distTo[v] + e.weight()) {
+                    distTo[w] = distTo[v] + e.weight();
+                    edgeTo[w] = e;
+                    queue.add(new QueueEntry(w, distTo[w]));
+                }
+            }
+        }
+
+        // targets in the subtree of every vertex, children are settled after parents
+        final int[] subtree = new int[V];
+        for (int i = settledCount - 1; i > 0; i--) {
+            final int v = settled[i];
+            subtree[v]++;
+            final DirectedEdge e = edgeTo[v];
+
+            if (weighted) {
+                contribution[e.from()] += e.weight() * subtree[v];
+                contribution[v] += e.weight() * subtree[v];
+            } else {
+                contribution[v] += subtree[v];
+            }
+
+            subtree[e.from()] += subtree[v];
+        }
+
+        if (!weighted) {
+            contribution[source] += subtree[source];
+        }
+    }
+
+    private List<Estimate> estimate(final double log) {
+        final List<Estimate> estimates = new ArrayList<>(V);
+        final int rest = V - samples;
+
+        for (int v = 0; v < V; v++) {
+            final double mean = sum[v] / samples;
+            final double error;
+
+            if (rest == 0) {
+                error = 0;
+            } else if (samples < 2) {
+                error = range;
+            } else {
+                final double variance = Math.max(0, (sumSquared[v] - samples * mean * mean) / (samples - 1));
+                error = Math.sqrt(2 * variance * log / samples) + 7 * range * log / (3 * (samples - 1));
+            }
+
+            final double lower = sum[v] + rest * Math.max(0, mean - error);
+            final double upper = sum[v] + rest * Math.min(range, mean + error);
+            estimates.add(new Estimate(v, sum[v] + rest * mean, lower, upper));
+        }
+
+        estimates.sort((o1, o2) -> Double.compare(o2.getValue(), o1.getValue()));
+
+        double minTopLower = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < k; i++) {
+            minTopLower = Math.min(minTopLower, estimates.get(i).getLower());
+        }
+
+        double maxRestUpper = Double.NEGATIVE_INFINITY;
+        for (int i = k; i < V; i++) {
+            maxRestUpper = Math.max(maxRestUpper, estimates.get(i).getUpper());
+        }
+
+        certified = minTopLower >= maxRestUpper;
+        return estimates.subList(0, k);
+    }
+
+    /**
+     * Returns the top <tt>k</tt> vertices in descending order of estimated betweenness.
+     *
+     * @return estimates with confidence intervals
+     */
+    public List<Estimate> top() {
+        return Collections.unmodifiableList(top);
+    }
+
+    /**
+     * Returns the number of sampled sources.
+     *
+     * @return the number of single source shortest path computations done
+     */
+    public int samples() {
+        return samples;
+    }
+
+    /**
+     * Is top <tt>k</tt> set separated from the other vertices by the confidence intervals?
+     *
+     * @return <tt>true</tt> if the set is certified
+     */
+    public boolean isCertified() {
+        return certified;
+    }
+
+    public static final class Estimate {
+        private final int vertex;
+        private final double value;
+        private final double lower;
+        private final double upper;
+
+        private Estimate(final int vertex, final double value, final double lower, final double upper) {
+            this.vertex = vertex;
+            this.value = value;
+            this.lower = lower;
+            this.upper = upper;
+        }
+
+        public int getVertex() {
+            return vertex;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        public double getLower() {
+            return lower;
+        }
+
+        public double getUpper() {
+            return upper;
+        }
+    }
+
+    private static final class QueueEntry implements Comparable<QueueEntry> {
+        private final int vertex;
+        private final double dist;
+
+        private QueueEntry(final int vertex, final double dist) {
+            this.vertex = vertex;
+            this.dist = dist;
+        }
+
+        @Override
+        public int compareTo(final QueueEntry o) {
+            return Double.compare(dist, o.dist);
+        }
+    }
+}
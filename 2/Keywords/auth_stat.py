@@ -16,6 +16,7 @@ degree_sent_pattern = u'_soc_graph_sentim_raw.tsv'
 num_threads_pattern = u'_threads_count.tsv'
 betweenness_pattern = u'betweenness_'
 betweenness_sent_pattern = 'sentim'
+triangles_pattern = u'triangles_'
 prefix = 'auth_stat_'
 
 
@@ -55,6 +56,18 @@ def check_sentim_graph_file_exists(sentim_graph_files, f):
     raise ValueError(u'Matching sentiment graph file for ' + f + u' not found!')
 
 
+def check_triangles_file_exists(triangles_files, f):
+    part = f.partition(delimiter)
+    name = part[0]
+
+    for b in triangles_files:
+        bname = re.sub(triangles_pattern, '', b.partition(delimiter)[0])
+        if bname == re.sub(betweenness_pattern, '', name):
+            return b
+
+    raise ValueError(u'Matching triangles file for ' + f + u' not found!')
+
+
 def check_threads_count_file_exists(sentim_graph_files, f):
     part = f.partition(delimiter)
     name = part[0]
@@ -67,12 +80,14 @@ def check_threads_count_file_exists(sentim_graph_files, f):
     raise ValueError(u'Matching threads count file for ' + f + u' not found!')
 
 
-def merge_data(betweenness_sent_file, betweenness_file, clean_graph_file, sentim_graph_file, threads_count_file):
+def merge_data(betweenness_sent_file, betweenness_file, clean_graph_file, sentim_graph_file, threads_count_file,
+               triangles_file):
     reply_count_data = read_csv(clean_graph_file)
     reply_sentim_data = read_csv(sentim_graph_file)
     threads_count_data = read_csv(threads_count_file)[1:]
     betweenness_data = read_csv(betweenness_file)
     betweenness_sent_data = read_csv(betweenness_sent_file)
+    triangles_data = read_csv(triangles_file)
 
     authors = [x[0] for x in threads_count_data]
     betweenness = [x[1] for x in betweenness_data]
@@ -82,9 +97,11 @@ def merge_data(betweenness_sent_file, betweenness_file, clean_graph_file, sentim
     in_degree_sent = [sum([float(x) for x in row[1:]]) for row in list(zip(*reply_sentim_data))[1:]]
     out_degree_sent = [sum([float(x) for x in row[1:]]) for row in reply_sentim_data[1:]]
     threads_count = [x[1] for x in threads_count_data]
+    triangles = [x[1] for x in triangles_data]
+    clustering = [x[2] for x in triangles_data]
 
     result = list(zip(authors, betweenness, in_degree, out_degree, betweenness_sent,
-                      in_degree_sent, out_degree_sent, threads_count))
+                      in_degree_sent, out_degree_sent, threads_count, triangles, clustering))
 
     return result
 
@@ -121,6 +138,7 @@ def main():
         clean_graph_files = [f for f in files if f.endswith(degree_pattern)]
         sentim_graph_files = [f for f in files if f.endswith(degree_sent_pattern)]
         threads_count_files = [f for f in files if f.endswith(num_threads_pattern)]
+        triangles_files = [f for f in files if triangles_pattern in f]
 
         if not betweenness_sent_files:
             raise ValueError('No one input file found!')
@@ -132,10 +150,12 @@ def main():
             clean_graph_file = check_clean_graph_file_exists(clean_graph_files, file)
             sentim_graph_file = check_sentim_graph_file_exists(sentim_graph_files, file)
             threads_count_file = check_threads_count_file_exists(threads_count_files, file)
+            triangles_file = check_triangles_file_exists(triangles_files, file)
 
-            result = merge_data(file, betweenness_file, clean_graph_file, sentim_graph_file, threads_count_file)
+            result = merge_data(file, betweenness_file, clean_graph_file, sentim_graph_file, threads_count_file,
+                                triangles_file)
             result.insert(0, ['author', 'betweenness', 'in_degree', 'out_degree', 'betweenness_sent',
-                              'in_degree_sent', 'out_degree_sent', 'num_of_threads'])
+                              'in_degree_sent', 'out_degree_sent', 'num_of_threads', 'triangles', 'clustering'])
 
             part = betweenness_file.partition(delimiter)
 
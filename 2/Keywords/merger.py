@@ -78,7 +78,7 @@ def main():
             result.insert(0, ['length', 'links', 'quoted', 'position',
                               'sentiment', 'keywords', 'betweenness',
                               'in_degree', 'out_degree', 'betweenness_sent', 'in_degree_sent',
-                              'out_degree_sent', 'num_of_threads', 'utility'])
+                              'out_degree_sent', 'num_of_threads', 'triangles', 'clustering', 'utility'])
 
             name = stat_file.partition('/')[2].partition(stat_post_pattern)[2]
             filename = directory + '/' + prefix + name
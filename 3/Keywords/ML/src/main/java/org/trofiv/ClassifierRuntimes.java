@@ -0,0 +1,168 @@
+package org.trofiv;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import weka.classifiers.Classifier;
+import weka.classifiers.functions.LibSVM;
+import weka.classifiers.functions.Logistic;
+import weka.classifiers.lazy.IB1;
+import weka.classifiers.lazy.IBk;
+import weka.classifiers.lazy.KStar;
+import weka.classifiers.meta.*;
+import weka.classifiers.rules.*;
+import weka.classifiers.trees.*;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Runtimes of a bootstrap replicate per classifier and data set size, kept between runs in a file. Runtime for a data
+ * set size which isn't recorded is scaled linearly from the nearest recorded size. A classifier without recorded
+ * runtime, e.g. because its replicates failed, gets its cost from a static ranking of classifiers, scaled to
+ * milliseconds by how the recorded classifiers compare with their static costs.
+ * <p>
+ * Runtimes are recorded and estimated by one thread only.
+ */
+final class ClassifierRuntimes {
+    private static final double DEFAULT_COST = 1.0;
+    private static final double MEDIUM_COST = 10.0;
+    private static final double HIGH_COST = 100.0;
+    /**
+     * Relative costs of classifiers which are known to be slow, the rest cost {@link #DEFAULT_COST}.
+     */
+    private static final Map<Class<? extends Classifier>, Double> STATIC_COSTS = new HashMap<>();
+
+    static {
+        Arrays.asList(KStar.class, LibSVM.class, LADTree.class, LMT.class, FT.class, NBTree.class, DTNB.class,
+                Stacking.class, StackingC.class, Grading.class)
+                .forEach(type -> STATIC_COSTS.put(type, HIGH_COST));
+
+        Arrays.asList(IB1.class, IBk.class, BFTree.class, J48graft.class, JRip.class, PART.class, NNge.class,
+                Ridor.class, DecisionTable.class, Logistic.class, LogitBoost.class,
+                ClassificationViaRegression.class, Dagging.class)
+                .forEach(type -> STATIC_COSTS.put(type, MEDIUM_COST));
+    }
+
+    private final File file;
+    /**
+     * Milliseconds per replicate by classifier class name and number of instances.
+     */
+    private final Map<String, NavigableMap<Integer, Double>> runtimes = new HashMap<>();
+
+    /**
+     * Reads runtimes recorded in the file, if there is one.
+     *
+     * @param file the file runtimes are kept in
+     */
+    ClassifierRuntimes(final File file) {
+        Preconditions.checkNotNull(file, "Runtimes file can't be null!");
+
+        this.file = file;
+
+        if (!file.isFile()) {
+            return;
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            for (CSVRecord record : CSVFormat.MYSQL.parse(reader)) {
+                runtimes.computeIfAbsent(record.get(0), name -> new TreeMap<>())
+                        .put(Integer.parseInt(record.get(1)), Double.parseDouble(record.get(2)));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Can't read classifier runtimes from " + file + ", static costs are used");
+            runtimes.clear();
+        }
+    }
+
+    /**
+     * Estimates milliseconds a replicate of every classifier takes.
+     *
+     * @param classifiers  the classifiers
+     * @param numInstances the number of instances of the data set
+     * @return estimated runtimes, <tt>null</tt> if no classifier has recorded runtime
+     */
+    double[] estimate(final List<Classifier> classifiers, final int numInstances) {
+        final double[] result = new double[classifiers.size()];
+        final double[] costs = staticCosts(classifiers);
+        double recordedMillis = 0;
+        double recordedCosts = 0;
+
+        for (int i = 0; i < result.length; i++) {
+            final NavigableMap<Integer, Double> recorded = runtimes.get(classifiers.get(i).getClass().getName());
+            if (recorded == null) {
+                result[i] = Double.NaN;
+                continue;
+            }
+
+            final Map.Entry<Integer, Double> floor = recorded.floorEntry(numInstances);
+            final Map.Entry<Integer, Double> ceiling = recorded.ceilingEntry(numInstances);
+            final Map.Entry<Integer, Double> nearest = floor == null ? ceiling
+                    : ceiling == null || numInstances - floor.getKey() <= ceiling.getKey() - numInstances ? floor
+                    : ceiling;
+
+            result[i] = nearest.getValue() * numInstances / Math.max(nearest.getKey(), 1);
+            recordedMillis += result[i];
+            recordedCosts += costs[i];
+        }
+
+        if (recordedCosts == 0) {
+            return null;
+        }
+
+        for (int i = 0; i < result.length; i++) {
+            if (Double.isNaN(result[i])) {
+                result[i] = costs[i] * recordedMillis / recordedCosts;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns static relative costs of classifiers, for use when runtimes aren't recorded.
+     *
+     * @param classifiers the classifiers
+     * @return relative costs of the classifiers
+     */
+    static double[] staticCosts(final List<Classifier> classifiers) {
+        return classifiers.stream()
+                .mapToDouble(classifier -> STATIC_COSTS.getOrDefault(classifier.getClass(), DEFAULT_COST))
+                .toArray();
+    }
+
+    /**
+     * Records runtime of a replicate, averaging it with the runtime recorded for the same data set size before.
+     *
+     * @param classifier   the classifier
+     * @param numInstances the number of instances of the data set
+     * @param millis       milliseconds the replicate took
+     */
+    void record(final Classifier classifier, final int numInstances, final double millis) {
+        runtimes.computeIfAbsent(classifier.getClass().getName(), name -> new TreeMap<>())
+                .merge(numInstances, millis, (previous, current) -> (previous + current) / 2);
+    }
+
+    /**
+     * Writes recorded runtimes to the file.
+     */
+    void save() {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            final CSVPrinter out = CSVFormat.MYSQL.print(writer);
+
+            for (Map.Entry<String, NavigableMap<Integer, Double>> classifier : runtimes.entrySet()) {
+                for (Map.Entry<Integer, Double> runtime : classifier.getValue().entrySet()) {
+                    out.printRecord(classifier.getKey(), runtime.getKey(), runtime.getValue());
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Can't save classifier runtimes to " + file);
+        }
+    }
+}
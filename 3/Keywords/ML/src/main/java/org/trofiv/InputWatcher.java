@@ -0,0 +1,148 @@
+package org.trofiv;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps outputs of the data set files of keyword directories up to date: first processes files changed since the
+ * manifest was written or missing outputs, then waits for changes in the directories and processes only changed
+ * files. Several events in a row are batched until directories are quiet for {@link #QUIET_PERIOD_MS}, as files are
+ * written in chunks.
+ * <p>
+ * A file which can't be processed, e.g. because it's still being written, is reported and left changed in the
+ * manifest, so that it's processed again with the next change. Deleted files are dropped from the manifest.
+ */
+final class InputWatcher {
+    private static final long QUIET_PERIOD_MS = 2000;
+
+    private final File[] directories;
+    private final Pattern inputFiles;
+    private final Manifest manifest;
+    private final Predicate<File> hasOutputs;
+
+    /**
+     * @param directories directories to watch
+     * @param inputFiles  names of the data set files
+     * @param manifest    processed files
+     * @param hasOutputs  are all outputs of the file there?
+     */
+    InputWatcher(
+            final File[] directories,
+            final Pattern inputFiles,
+            final Manifest manifest,
+            final Predicate<File> hasOutputs) {
+        this.directories = directories.clone();
+        this.inputFiles = inputFiles;
+        this.manifest = manifest;
+        this.hasOutputs = hasOutputs;
+    }
+
+    /**
+     * Processes changed files until the thread is interrupted.
+     *
+     * @param processor  computes outputs of the file and returns whether it succeeded
+     * @param afterBatch is run after the files of the start-up and of every batch of changes are processed
+     * @throws IOException if directories can't be watched or the manifest can't be saved
+     */
+    @SuppressWarnings("InfiniteLoopStatement")
+    void watch(final Predicate<File> processor, final Runnable afterBatch) throws IOException {
+        final Collection<File> candidates = new LinkedHashSet<>();
+        final Collection<File> retried = new LinkedHashSet<>();
+
+        for (File dir : directories) {
+            candidates.addAll(inputFiles(dir));
+        }
+
+        // files deleted since the manifest was written
+        manifest.retainAll(candidates);
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            final Map<WatchKey, File> keys = new HashMap<>();
+            for (File dir : directories) {
+                keys.put(dir.toPath().register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+            }
+
+            boolean changed = true;
+
+            while (true) {
+                retried.clear();
+                int processed = 0;
+
+                for (File file : candidates) {
+                    if (!file.isFile()) {
+                        manifest.remove(file);
+                        changed = true;
+                        continue;
+                    }
+
+                    final long lastModified = file.lastModified();
+                    final String hash = manifest.hash(file);
+                    if (!manifest.isChanged(file, hash) && hasOutputs.test(file)) {
+                        // only touched, remember new time not to hash it again
+                        manifest.update(file, hash);
+                        continue;
+                    }
+
+                    changed = true;
+                    try {
+                        if (!processor.test(file)) {
+                            retried.add(file);
+                        } else if (file.lastModified() != lastModified) {
+                            // written while processed, outputs are for the content hashed before
+                            retried.add(file);
+                        } else {
+                            manifest.update(file, hash);
+                            processed++;
+                        }
+                    } catch (RuntimeException e) {
+                        System.out.println("Can't process " + file + ", will retry on next change");
+                        System.out.println(e);
+                        retried.add(file);
+                    }
+                }
+
+                if (changed) {
+                    afterBatch.run();
+                    System.out.println(processed + " changed files processed, " + retried.size() + " to retry");
+                    changed = false;
+                }
+
+                manifest.save();
+
+                candidates.clear();
+                candidates.addAll(retried);
+                for (WatchKey key = watchService.take(); key != null;
+                     key = watchService.poll(QUIET_PERIOD_MS, TimeUnit.MILLISECONDS)) {
+                    final File dir = keys.get(key);
+
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            candidates.addAll(inputFiles(dir));
+                        } else if (inputFiles.matcher(event.context().toString()).matches()) {
+                            candidates.add(new File(dir, event.context().toString()));
+                        }
+                    }
+
+                    key.reset();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("ConstantConditions")
+    private List<File> inputFiles(final File dir) {
+        return Arrays.asList(dir.listFiles(path -> path.isFile() && inputFiles.matcher(path.getName()).matches()));
+    }
+}
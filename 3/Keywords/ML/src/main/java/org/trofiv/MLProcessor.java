@@ -3,6 +3,7 @@ package org.trofiv;
 import com.google.common.base.Preconditions;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.commons.lang3.tuple.Triple;
 import org.apache.commons.math.stat.descriptive.rank.Percentile;
@@ -21,14 +22,16 @@ import weka.classifiers.misc.VFI;
 import weka.classifiers.rules.*;
 import weka.classifiers.trees.*;
 import weka.core.Instances;
+import weka.core.WeightedInstancesHandler;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -39,16 +42,29 @@ public class MLProcessor {
     private static final double QUANTILE_10_TH = 10.0;
     private static final double QUANTILE_90_TH = 90.0;
     private static final double QUANTILE_50_TH = 50.0;
-
-    private static final Random RANDOM = new SecureRandom();
+    private static final double NANOS_PER_MILLI = 1.0e6;
+    /**
+     * Replicates of classifiers faster than this are batched into tasks taking about this long.
+     */
+    private static final double MIN_TASK_MILLIS = 50.0;
+    /**
+     * Whether classifiers handling weighted instances train on bootstrap replicates kept as instance weights, see
+     * {@link WeightedBootstrap}, instead of resampled copies of the data.
+     */
+    private static final boolean WEIGHTED_BOOTSTRAP = true;
+
+    private static final RandomStreams RANDOM_STREAMS = RandomStreams.fromSystemProperties();
     private static final Percentile QUANTILE = new Percentile();
     private static final String INPUT_DIRECTORIES_LOCATION = "../";
-    private static final Collection<Future> TASKS = new LinkedList<>();
     private static final Pattern INPUT_FILES = Pattern.compile(".*arff");
     private static final Pattern INPUT_DIRECTORIES = Pattern.compile("keywords.*");
+    private static final String WATCH_MODE = "--watch";
+    private static final String MANIFEST = ".mlprocessor_manifest";
+    private static final File TOTAL = new File("total.tsv");
     private static final List<Pair<ClassifierGroup, Classifier>> LISTED_CLASSIFIERS = new LinkedList<>();
     private static final Map<ClassifierGroup, Collection<Classifier>> CLASSIFIER_GROUPS = new EnumMap<>(ClassifierGroup.class);
-    private static final ExecutorService THREAD_POOL = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private static final ExecutorService THREAD_POOL = Executors.newWorkStealingPool();
+    private static final ClassifierRuntimes RUNTIMES = new ClassifierRuntimes(new File("runtimes.tsv"));
 
     static {
         final Collection<Classifier> decisionTrees = Arrays.asList(
@@ -123,6 +139,13 @@ public class MLProcessor {
                 throw new IllegalArgumentException("No one input directory found!");
             }
 
+            if (Arrays.asList(args).contains(WATCH_MODE)) {
+                final Manifest manifest = new Manifest(new File(workDirectory, MANIFEST), String.join(" ", args));
+                new InputWatcher(keywordDirectories, INPUT_FILES, manifest, file -> resultsFile(file).isFile())
+                        .watch(file -> saveResults(file, processFile(file)), () -> printTotal(keywordDirectories));
+                return;
+            }
+
             final List<GroupedClassificationResults> rawTotal = new LinkedList<>();
 
             for (File dir : keywordDirectories) {
@@ -135,12 +158,13 @@ public class MLProcessor {
 
                 for (File file : fileToProcess) {
                     final List<GroupedClassificationResults> rawResults = processFile(file);
+                    saveResults(file, rawResults);
                     rawTotal.addAll(rawResults);
                 }
             }
 
             final List<GroupedClassificationResults> total = groupResults(rawTotal);
-            printResults(new File("total.tsv"), total);
+            printResults(TOTAL, total);
         } catch (IOException e) {
             System.out.println("Can't access working directory or missing dataset files");
             System.out.println(e.getLocalizedMessage());
@@ -149,7 +173,84 @@ public class MLProcessor {
 
     private static List<GroupedClassificationResults> processFile(final File fileName) {
         final Instances data = readData(fileName);
-        return analyze(data);
+        return analyze(data, fileName.getParentFile().getName() + '/' + fileName.getName());
+    }
+
+    /**
+     * Groups results of all data set files which have them saved, for watch mode where only changed files are
+     * analyzed.
+     *
+     * @param keywordDirectories directories of the data set files
+     */
+    @SuppressWarnings("ConstantConditions")
+    private static void printTotal(final File[] keywordDirectories) {
+        final List<GroupedClassificationResults> rawTotal = new LinkedList<>();
+
+        for (File dir : keywordDirectories) {
+            for (File file : dir.listFiles(path -> path.isFile() && INPUT_FILES.matcher(path.getName()).matches())) {
+                if (resultsFile(file).isFile()) {
+                    rawTotal.addAll(loadResults(file));
+                }
+            }
+        }
+
+        printResults(TOTAL, groupResults(rawTotal));
+    }
+
+    // results of every classifier for the data set file, kept next to it
+    private static File resultsFile(final File fileName) {
+        final String baseName = fileName.getAbsolutePath().substring(0, fileName.getAbsolutePath().lastIndexOf('.'));
+        return new File(baseName + "_classifiers.tsv");
+    }
+
+    /**
+     * Saves results of the data set file as records of classifier group, classifier name and quantiles for every k.
+     *
+     * @param fileName the data set file
+     * @param results  the results of its classifiers
+     * @return whether the results are saved
+     */
+    private static boolean saveResults(final File fileName, final List<GroupedClassificationResults> results) {
+        try (BufferedWriter writer = Files.newBufferedWriter(resultsFile(fileName).toPath(), StandardCharsets.UTF_8)) {
+            final CSVPrinter out = CSVFormat.MYSQL.print(writer);
+
+            for (GroupedClassificationResults result : results) {
+                final List<Object> record = new ArrayList<>();
+                record.add(result.getClassifierGroup().name());
+                record.add(result.getClassifierName());
+                for (Triple<Double, Double, Double> quantiles : result.getQuantiles()) {
+                    record.add(quantiles.getLeft());
+                    record.add(quantiles.getMiddle());
+                    record.add(quantiles.getRight());
+                }
+                out.printRecord(record);
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Can't save results of " + fileName);
+            return false;
+        }
+    }
+
+    private static List<GroupedClassificationResults> loadResults(final File fileName) {
+        final List<GroupedClassificationResults> results = new LinkedList<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(resultsFile(fileName).toPath(), StandardCharsets.UTF_8)) {
+            for (CSVRecord record : CSVFormat.MYSQL.parse(reader)) {
+                final List<Triple<Double, Double, Double>> quantiles = new ArrayList<>();
+                for (int i = 2; i + 2 < record.size(); i += 3) {
+                    quantiles.add(Triple.of(Double.parseDouble(record.get(i)), Double.parseDouble(record.get(i + 1)),
+                            Double.parseDouble(record.get(i + 2))));
+                }
+                results.add(new GroupedClassificationResults(
+                        ClassifierGroup.valueOf(record.get(0)), record.get(1), quantiles));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Can't read results of " + fileName + ", they are left out of the total");
+            return Collections.emptyList();
+        }
+
+        return results;
     }
 
     private static List<GroupedClassificationResults> groupResults(final List<GroupedClassificationResults> source) {
@@ -268,47 +369,126 @@ public class MLProcessor {
         }
     }
 
-    private static List<GroupedClassificationResults> analyze(final Instances data) {
+    private static List<GroupedClassificationResults> analyze(final Instances data, final String dataset) {
         Preconditions.checkNotNull(data, "Dataset can't be null!");
 
-        final List<GroupedClassificationResults> result = new CopyOnWriteArrayList<>();
+        // weighted replicates are drawn by a bootstrap owned by the worker thread; bootstraps are kept by this call
+        // rather than by thread locals, which would outlive it on threads of the pool
+        final Map<Thread, WeightedBootstrap> bootstraps = new ConcurrentHashMap<>();
 
-        LISTED_CLASSIFIERS.stream().forEachOrdered(classifierPair -> {
-            final Runnable runnable = () -> {
-                try {
-                    final ClassifierGroup group = classifierPair.getLeft();
-                    final Classifier classifier = classifierPair.getRight();
+        final List<Classifier> classifiers = LISTED_CLASSIFIERS.stream()
+                .map(Pair::getRight)
+                .collect(Collectors.toList());
+        final double[] estimated = RUNTIMES.estimate(classifiers, data.numInstances());
+        final double[] costs = estimated == null ? ClassifierRuntimes.staticCosts(classifiers) : estimated;
 
-                    final double[][] ncg = new double[BOOTSTRAP_COUNT][];
+        // replicates are tasks of their own, replicates of cheap classifiers are batched to cover scheduling overhead
+        final List<Triple<Integer, Integer, Integer>> batches = new ArrayList<>();
 
-                    for (int i = 0; i < BOOTSTRAP_COUNT; i++) {
-                        System.out.format("%d of %d for %s complete\n", i, BOOTSTRAP_COUNT,
-                                classifier.getClass().getSimpleName());
+        for (int k = 0; k < classifiers.size(); k++) {
+            //noinspection NumericCastThatLosesPrecision
+            final int size = estimated == null ? 1
+                    : (int) Math.max(1, Math.min(BOOTSTRAP_COUNT, MIN_TASK_MILLIS / estimated[k]));
 
-                        final Instances trainData = data.resample(RANDOM);
-                        final Evaluation evaluation = new Evaluation(trainData);
+            for (int start = 0; start < BOOTSTRAP_COUNT; start += size) {
+                batches.add(Triple.of(k, start, Math.min(start + size, BOOTSTRAP_COUNT)));
+            }
+        }
 
-                        classifier.buildClassifier(trainData);
-                        evaluation.evaluateModel(classifier, data);
-                        ncg[i] = ncg(evaluation);
-                    }
+        // longest processing time first, so that cheap batches fill the pool up at the end of the run
+        batches.sort(Comparator.comparingDouble(batch ->
+                -costs[batch.getLeft()] * (batch.getRight() - batch.getMiddle())));
 
-                    final List<double[]> zippedNcg = Utils.zip(ncg);
-                    final List<Triple<Double, Double, Double>> quantileNcg = extractNcg(zippedNcg);
+        final double[][][] ncg = new double[classifiers.size()][BOOTSTRAP_COUNT][];
+        final AtomicLong[] nanos = new AtomicLong[classifiers.size()];
+        final AtomicInteger[] completed = new AtomicInteger[classifiers.size()];
+        final List<List<Future<?>>> tasks = new ArrayList<>(classifiers.size());
 
-                    result.add(new GroupedClassificationResults(group, classifier.getClass().getSimpleName(), quantileNcg));
-                } catch (Exception e) {
-                    e.printStackTrace();
+        for (int k = 0; k < classifiers.size(); k++) {
+            nanos[k] = new AtomicLong();
+            completed[k] = new AtomicInteger();
+            tasks.add(new LinkedList<>());
+        }
+
+        for (Triple<Integer, Integer, Integer> batch : batches) {
+            final int k = batch.getLeft();
+            final Classifier classifier = classifiers.get(k);
+
+            tasks.get(k).add(THREAD_POOL.submit(() -> {
+                final long started = System.nanoTime();
+
+                for (int i = batch.getMiddle(); i < batch.getRight(); i++) {
+                    final Random random = RANDOM_STREAMS.replicate(dataset, classifier.getClass().getName(), i);
+                    ncg[k][i] = evaluateReplicate(classifier, data, random, bootstraps);
+                    System.out.format("%d of %d for %s complete\n", completed[k].incrementAndGet(), BOOTSTRAP_COUNT,
+                            classifier.getClass().getSimpleName());
+                }
+
+                nanos[k].addAndGet(System.nanoTime() - started);
+                return null;
+            }));
+        }
+
+        final List<GroupedClassificationResults> result = new LinkedList<>();
+
+        for (int k = 0; k < classifiers.size(); k++) {
+            final ClassifierGroup group = LISTED_CLASSIFIERS.get(k).getLeft();
+            final Classifier classifier = classifiers.get(k);
+
+            try {
+                for (Future<?> task : tasks.get(k)) {
+                    task.get();
                 }
-            };
 
-            TASKS.add(THREAD_POOL.submit(runnable));
-        });
+                RUNTIMES.record(classifier, data.numInstances(), nanos[k].get() / NANOS_PER_MILLI / BOOTSTRAP_COUNT);
+
+                final List<double[]> zippedNcg = Utils.zip(ncg[k]);
+                final List<Triple<Double, Double, Double>> quantileNcg = extractNcg(zippedNcg);
+
+                result.add(new GroupedClassificationResults(group, classifier.getClass().getSimpleName(), quantileNcg));
+            } catch (InterruptedException | ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
 
-        waitForTaskCompleting();
+        bootstraps.clear();
+        RUNTIMES.save();
         return result;
     }
 
+    /**
+     * Evaluates a copy of the classifier, trained on a bootstrap replicate of the data, on the data itself.
+     *
+     * @param template   the classifier to copy
+     * @param data       the data to draw the replicate from and evaluate on
+     * @param random     the random number generator of the replicate
+     * @param bootstraps weighted replicates of the data by thread, one is added for the current thread if missing
+     * @return the ncg of the copy
+     * @throws Exception if the classifier can't be copied, trained or evaluated
+     */
+    @SuppressWarnings("ProhibitedExceptionDeclared")
+    private static double[] evaluateReplicate(
+            final Classifier template,
+            final Instances data,
+            final Random random,
+            final Map<Thread, WeightedBootstrap> bootstraps) throws Exception {
+        final Classifier classifier = Classifier.makeCopy(template);
+        final Instances trainData;
+
+        if (WEIGHTED_BOOTSTRAP && classifier instanceof WeightedInstancesHandler) {
+            trainData = bootstraps.computeIfAbsent(Thread.currentThread(),
+                    thread -> new WeightedBootstrap(data)).draw(random);
+        } else {
+            trainData = data.resample(random);
+        }
+
+        final Evaluation evaluation = new Evaluation(trainData);
+
+        classifier.buildClassifier(trainData);
+        evaluation.evaluateModel(classifier, data);
+        return ncg(evaluation);
+    }
+
     private static Map<ClassifierGroup, Triple<
             List<List<Double>>, // quantiles 10th for each classifier
             List<List<Double>>, // quantiles 50th for each classifier
@@ -382,13 +562,4 @@ public class MLProcessor {
         return quantileNcg;
     }
 
-    private static void waitForTaskCompleting() {
-        for (Future task : TASKS) {
-            try {
-                task.get();
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-            }
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package org.trofiv;
+
+import java.security.SecureRandom;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Random number generators of a run, all derived from one master seed. Seeds make up a tree: the seed of a data set
+ * is derived from the master seed, the seed of a classifier from the seed of its data set and the seed of a bootstrap
+ * replicate from the seed of its classifier. A generator depends on its key only, not on the thread which asks for
+ * it or on what was drawn before, so that runs with the same master seed draw the same replicates.
+ * <p>
+ * Weka draws from <tt>java.util.Random</tt>, so every replicate gets a generator of its own seeded from the tree.
+ */
+final class RandomStreams {
+    /**
+     * System property to take the master seed from.
+     */
+    static final String SEED_PROPERTY = "seed";
+
+    private final long masterSeed;
+
+    RandomStreams(final long masterSeed) {
+        this.masterSeed = masterSeed;
+    }
+
+    /**
+     * Creates generators seeded from the {@link #SEED_PROPERTY} system property, or from a random seed if it isn't set.
+     * The master seed is printed, so that the run can be reproduced.
+     *
+     * @return the generators
+     */
+    static RandomStreams fromSystemProperties() {
+        final String property = System.getProperty(SEED_PROPERTY);
+        final long seed = property == null ? new SecureRandom().nextLong() : Long.parseLong(property);
+        System.out.println("Master seed " + seed + ", pass -D" + SEED_PROPERTY + '=' + seed + " to reproduce the run");
+        return new RandomStreams(seed);
+    }
+
+    /**
+     * Returns generator of the bootstrap replicate.
+     *
+     * @param dataset    the name of the data set
+     * @param classifier the name of the classifier
+     * @param replicate  the number of the replicate
+     * @return the generator
+     */
+    Random replicate(final String dataset, final String classifier, final int replicate) {
+        //noinspection UnsecureRandomNumberGeneration
+        return new Random(child(child(child(masterSeed, dataset.hashCode()), classifier.hashCode()), replicate));
+    }
+
+    private static long child(final long seed, final long key) {
+        return new SplittableRandom(seed ^ key).nextLong();
+    }
+}
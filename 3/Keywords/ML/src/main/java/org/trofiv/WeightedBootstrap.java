@@ -0,0 +1,52 @@
+package org.trofiv;
+
+import com.google.common.base.Preconditions;
+import weka.core.Instances;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Bootstrap replicates of a data set kept as instance weights instead of resampled copies. Instances are drawn the
+ * same way <tt>Instances.resample()</tt> draws them, but every drawn instance is copied once and weighted by the
+ * number of times it's drawn, which takes about two thirds of the copies of a resampled replicate.
+ * Instances which aren't drawn are left out rather than kept with zero weight, as lazy learners would still find
+ * them as neighbours.
+ * <p>
+ * The data itself isn't changed, but the counts are, so every thread needs a bootstrap of its own.
+ */
+class WeightedBootstrap {
+    private final Instances data;
+    private final int[] counts;
+
+    WeightedBootstrap(final Instances data) {
+        Preconditions.checkNotNull(data, "Dataset can't be null!");
+
+        this.data = data;
+        counts = new int[data.numInstances()];
+    }
+
+    /**
+     * Draws the next replicate.
+     *
+     * @param random the random number generator
+     * @return the drawn instances weighted by the number of draws
+     */
+    Instances draw(final Random random) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < counts.length; i++) {
+            counts[random.nextInt(counts.length)]++;
+        }
+
+        final Instances result = new Instances(data, counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                result.add(data.instance(i));
+                final int last = result.numInstances() - 1;
+                result.instance(last).setWeight(data.instance(i).weight() * counts[i]);
+            }
+        }
+
+        return result;
+    }
+}